@@ -0,0 +1,131 @@
+package me.mtk.magneticmoose;
+
+import java.util.Random;
+
+// The programs over which the benchmarks are run. Each program is
+// generated from a fixed seed, so that every run of a benchmark 
+// measures the same program. None of them divides by zero.
+final class Corpus
+{
+    // The names of the programs, for use in @Param.
+    static final String FORMS = "forms";
+    static final String WIDE = "wide";
+    static final String DEEP = "deep";
+    static final String COMMENTS = "comments";
+
+    private final Random random = new Random(42);
+    private final StringBuilder source = new StringBuilder();
+
+    private Corpus() {}
+
+    /**
+     * Generates the program of the given name:
+     *
+     * forms: 20,000 small top-level expressions, one per line.
+     * wide: a single addition of 100,000 operands.
+     * deep: a single expression nested 10,000 levels deep.
+     * comments: 5,000 small top-level expressions, separated by
+     * inline and block comments that make up most of the program.
+     *
+     * @param name The name of a program.
+     * @return The source of the program.
+     */
+    static String generate(String name)
+    {
+        Corpus corpus = new Corpus();
+
+        switch (name)
+        {
+            case FORMS: corpus.forms(20_000, false); break;
+            case WIDE: corpus.wide(100_000); break;
+            case DEEP: corpus.deep(10_000); break;
+            case COMMENTS: corpus.forms(5_000, true); break;
+            default: throw new IllegalArgumentException(name);
+        }
+
+        return corpus.source.toString();
+    }
+
+    private void forms(int count, boolean comments)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (comments)
+            {
+                source.append("// Expression ").append(i)
+                    .append(" (of ").append(count).append(")\n");
+                source.append("/* (+ 1 2)\n   is not evaluated, ")
+                    .append("but (* 3 4) is. */ ");
+            }
+
+            form(2);
+            source.append('\n');
+        }
+    }
+
+    private void wide(int operands)
+    {
+        source.append("(+");
+        for (int i = 0; i < operands; i++)
+        {
+            source.append(' ');
+            number();
+        }
+        source.append(")\n");
+    }
+
+    private void deep(int depth)
+    {
+        for (int i = 0; i < depth; i++)
+        {
+            source.append(i % 2 == 0 ? "(+ " : "(- ");
+            number();
+            source.append(' ');
+        }
+
+        number();
+        
+        for (int i = 0; i < depth; i++)
+            source.append(')');
+        source.append('\n');
+    }
+
+    /*
+     * Appends a binary expression whose operands may themselves 
+     * be binary expressions, up to the given depth.
+     */
+    private void form(int depth)
+    {
+        char operator = "+-*/".charAt(random.nextInt(4));
+        int operands = 2 + random.nextInt(3);
+
+        source.append('(').append(operator);
+
+        for (int i = 0; i < operands; i++)
+        {
+            source.append(' ');
+            
+            // Only the first operand of a division may be zero.
+            if (operator == '/' && i > 0)
+                source.append(1 + random.nextInt(99));
+            else if (depth > 0 && random.nextInt(3) == 0)
+                form(depth - 1);
+            else
+                number();
+        }
+
+        source.append(')');
+    }
+
+    private void number()
+    {
+        int sign = random.nextInt(8);
+        if (sign == 0) source.append('-');
+        else if (sign == 1) source.append('+');
+
+        source.append(random.nextInt(1000));
+
+        if (random.nextBoolean())
+            source.append('.').append(random.nextInt(100));
+    }
+}
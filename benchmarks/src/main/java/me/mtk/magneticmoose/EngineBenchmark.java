@@ -0,0 +1,93 @@
+package me.mtk.magneticmoose;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Compares the ways of evaluating a parsed program: walking the
+// AST (Interpreter), calling a tree of nodes (Compiler), calling
+// generated bytecode (BytecodeCompiler), and executing postfix
+// code on a stack machine (ChunkCompiler and VirtualMachine).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EngineBenchmark
+{
+    @Param({"tree", "closure", "bytecode", "vm"})
+    public String engine;
+
+    @Param({Corpus.FORMS, Corpus.WIDE, Corpus.DEEP})
+    public String corpus;
+
+    private List<Expr> expressions;
+    private Node[] nodes;
+    private Chunk[] chunks;
+
+    private final Interpreter interpreter = new Interpreter();
+    private final VirtualMachine vm = new VirtualMachine();
+
+    @Setup
+    public void setup()
+    {
+        expressions = new Parser(new Lexer(Corpus.generate(corpus))).parse();
+        int size = expressions.size();
+
+        switch (engine)
+        {
+            case "closure":
+                nodes = new Node[size];
+                for (int i = 0; i < size; i++)
+                    nodes[i] = new Compiler().compile(expressions.get(i));
+                break;
+            case "bytecode":
+                nodes = new Node[size];
+                BytecodeCompiler compiler = new BytecodeCompiler();
+                for (int i = 0; i < size; i++)
+                    nodes[i] = compiler.compile(expressions.get(i));
+                break;
+            case "vm":
+                chunks = new Chunk[size];
+                for (int i = 0; i < size; i++)
+                    chunks[i] = new ChunkCompiler().compile(expressions.get(i));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole)
+    {
+        switch (engine)
+        {
+            case "closure":
+            case "bytecode":
+                for (Node node : nodes)
+                    blackhole.consume(node.getAsDouble());
+                break;
+            case "vm":
+                for (Chunk chunk : chunks)
+                    blackhole.consume(vm.execute(chunk));
+                break;
+            default:
+                for (Expr expr : expressions)
+                    interpreter.interpret(expr, blackhole::consume);
+                break;
+        }
+    }
+}
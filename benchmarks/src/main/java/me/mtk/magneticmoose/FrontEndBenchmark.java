@@ -0,0 +1,80 @@
+package me.mtk.magneticmoose;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures the Lexer and the Parser over each of the corpora.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FrontEndBenchmark
+{
+    @Param({Corpus.FORMS, Corpus.WIDE, Corpus.DEEP, Corpus.COMMENTS})
+    public String corpus;
+
+    private String source;
+
+    // The buffer that lex() fills, as the Parser would.
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup()
+    {
+        source = Corpus.generate(corpus);
+        buffer = new TokenBuffer(source, 1024);
+    }
+
+    /**
+     * Scans the program into Token objects.
+     */
+    @Benchmark
+    public List<Token> getTokens()
+    {
+        return new Lexer(source).getTokens();
+    }
+
+    /**
+     * Scans the program into a TokenBuffer, which is how
+     * the Parser receives its tokens.
+     */
+    @Benchmark
+    public int lex()
+    {
+        Lexer lexer = new Lexer(source);
+        int tokens = 0;
+
+        do
+        {
+            buffer.clear();
+            lexer.fill(buffer);
+            tokens += buffer.size();
+        }
+        while (buffer.type(buffer.size() - 1) != TokenType.EOF);
+
+        return tokens;
+    }
+
+    /**
+     * Scans and parses the program.
+     */
+    @Benchmark
+    public List<Expr> parse()
+    {
+        return new Parser(new Lexer(source)).parse();
+    }
+}
@@ -0,0 +1,85 @@
+package me.mtk.magneticmoose;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Measures the Interpreter over each of the corpora, which are
+// parsed beforehand. The deep corpus is taller than the tallest
+// expression that is evaluated recursively, so it measures the
+// explicit-stack evaluator; the forms corpus measures the 
+// recursive one.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InterpreterBenchmark
+{
+    @Param({Corpus.FORMS, Corpus.WIDE, Corpus.DEEP, Corpus.COMMENTS})
+    public String corpus;
+
+    private List<Expr> expressions;
+
+    // The expressions, as an array that evaluate() indexes, so
+    // that it does not allocate an Iterator.
+    private Expr[] roots;
+
+    private final Interpreter interpreter = new Interpreter();
+
+    @Setup
+    public void setup()
+    {
+        expressions = new Parser(new Lexer(Corpus.generate(corpus))).parse();
+        roots = expressions.toArray(new Expr[0]);
+    }
+
+    /**
+     * Evaluates the program as a DoubleVisitor, without sending
+     * its values anywhere. With -prof gc, gc.alloc.rate.norm is
+     * the number of bytes that evaluation itself allocates. It 
+     * should be a few bytes at most, however many nodes the 
+     * program has, since evaluating a node allocates nothing.
+     */
+    @Benchmark
+    public double evaluate()
+    {
+        double sum = 0;
+
+        for (int i = 0; i < roots.length; i++)
+            sum += roots[i].accept(interpreter);
+
+        return sum;
+    }
+
+    /**
+     * Interprets the program, sending each value to the Blackhole.
+     */
+    @Benchmark
+    public void interpret(Blackhole blackhole)
+    {
+        interpreter.interpret(expressions, blackhole::consume);
+    }
+
+    /**
+     * Interprets the program, converting each value to a string.
+     */
+    @Benchmark
+    public List<String> interpretToStrings()
+    {
+        return interpreter.interpret(expressions);
+    }
+}
@@ -0,0 +1,52 @@
+package me.mtk.magneticmoose;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures a whole run of each corpus, as by the command line: 
+// scanning, parsing, interpreting, and formatting the output,
+// which is discarded.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RunBenchmark
+{
+    @Param({Corpus.FORMS, Corpus.WIDE, Corpus.DEEP, Corpus.COMMENTS})
+    public String corpus;
+
+    private String source;
+
+    private Session session;
+
+    @Setup
+    public void setup()
+    {
+        source = Corpus.generate(corpus);
+
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        session = new Session(new Interpreter(), null, 
+            OutputStream.nullOutputStream(), discard, discard);
+    }
+
+    @Benchmark
+    public void run()
+    {
+        session.run(new Lexer(source));
+    }
+}
@@ -0,0 +1,93 @@
+package me.mtk.magneticmoose;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures what the Interpreter pays on shallow programs for being
+// able to evaluate deep ones. The forms corpus is evaluated by the
+// Interpreter and by a plain recursive DoubleVisitor, which is the
+// Interpreter as it was before it had an explicit-stack evaluator
+// to fall back on. The two should be equally fast: a shallow 
+// expression costs the Interpreter only a comparison of its height.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ShallowBenchmark
+{
+    // Evaluates an expression by recursing into every operand.
+    private static final class RecursiveEvaluator implements Expr.DoubleVisitor
+    {
+        @Override
+        public double visitNumberExpr(Expr.Number expr)
+        {
+            return expr.value;
+        }
+
+        @Override
+        public double visitUnaryExpr(Expr.Unary expr)
+        {
+            double right = expr.right.accept(this);
+
+            return expr.operator.type == TokenType.MINUS ? -right : right;
+        }
+
+        @Override
+        public double visitBinaryExpr(Expr.Binary expr)
+        {
+            double first = expr.first.accept(this);
+            double second = expr.second.accept(this);
+
+            switch (expr.operator.type)
+            {
+                case PLUS: return first + second;
+                case MINUS: return first - second;
+                case STAR: return first * second;
+                default:
+                    if (second == 0)
+                        throw new RuntimeError(expr.operator, "Cannot divide by 0");
+                    return first / second;
+            }
+        }
+    }
+
+    @Param({"interpreter", "recursive"})
+    public String evaluator;
+
+    private Expr[] expressions;
+    private Expr.DoubleVisitor visitor;
+
+    @Setup
+    public void setup()
+    {
+        expressions = new Parser(new Lexer(Corpus.generate(Corpus.FORMS)))
+            .parse().toArray(new Expr[0]);
+        visitor = evaluator.equals("interpreter") 
+            ? new Interpreter() 
+            : new RecursiveEvaluator();
+    }
+
+    @Benchmark
+    public double evaluate()
+    {
+        double sum = 0;
+
+        for (int i = 0; i < expressions.length; i++)
+            sum += expressions[i].accept(visitor);
+
+        return sum;
+    }
+}
@@ -0,0 +1,117 @@
+package me.mtk.magneticmoose;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures the time to the first result of a script, as by the
+// command line: the time from starting a JVM that runs the jar of
+// the interpreter until the first line of its output has been read.
+// This is mostly the time that the JVM takes to start and to load
+// the classes of the interpreter, so a regression in startup shows
+// up here long before it shows up in the other benchmarks.
+//
+// The JVM is started without class-data sharing (off), with the
+// archive of the JDK (default), or with the archive of the
+// interpreter as well (app), which "mvn package -Pcds" builds.
+// The paths are relative to the root of the repository.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+public class StartupBenchmark
+{
+    @Param({"off", "default", "app"})
+    public String sharing;
+
+    @Param({"interpreter/target/magnetic-moose-1.0-SNAPSHOT.jar"})
+    public String jar;
+
+    @Param({"interpreter/target/magnetic-moose.jsa"})
+    public String archive;
+
+    @Param({"me/mtk/magneticmoose/program.in"})
+    public String script;
+
+    private List<String> command;
+
+    // The JVM that is running the script.
+    private Process process;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        for (String path : List.of(jar, script))
+        {
+            if (!Files.isRegularFile(Path.of(path)))
+                throw new IOException("No such file: " + path);
+        }
+
+        command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+
+        if (sharing.equals("off"))
+            command.add("-Xshare:off");
+        else if (sharing.equals("app"))
+        {
+            if (!Files.isRegularFile(Path.of(archive)))
+                throw new IOException("No such file: " + archive
+                    + " (build it with mvn package -Pcds)");
+
+            // Fail rather than quietly run without the archive.
+            command.add("-Xshare:on");
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+
+        command.add("-jar");
+        command.add(jar);
+        command.add(script);
+    }
+
+    @Benchmark
+    public String firstResult() throws IOException
+    {
+        process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+
+        BufferedReader output = new BufferedReader(new InputStreamReader(
+            process.getInputStream(), StandardCharsets.US_ASCII));
+
+        String line = output.readLine();
+        if (line == null)
+            throw new IOException("The script printed nothing");
+
+        return line;
+    }
+
+    @TearDown(Level.Invocation)
+    public void awaitExit() throws IOException, InterruptedException
+    {
+        process.getInputStream().transferTo(OutputStream.nullOutputStream());
+        process.waitFor();
+    }
+}
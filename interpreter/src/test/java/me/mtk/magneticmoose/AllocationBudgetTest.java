@@ -0,0 +1,216 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleConsumer;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Asserts that the hot paths of the interpreter allocate no more
+// than a fixed amount of memory per unit of work: per token for the
+// Lexer, per AST node for the Parser, and per top-level expression
+// for the Interpreter. The amounts are measured with the allocation
+// counter of the current thread, after each path has been run often
+// enough to be compiled by the JIT (whose escape analysis removes
+// some allocations), so they are what a long run would see.
+//
+// The budgets have some headroom over what is measured today; a
+// change that exceeds one has very likely started to allocate on
+// a path that did not before.
+class AllocationBudgetTest
+{
+    // The bytes that the Lexer may allocate per token. Only the 
+    // index of line starts is allocated, and it grows by doubling.
+    private static final double LEXER_BYTES_PER_TOKEN = 2;
+
+    // The bytes that the Parser may allocate per node. Each node
+    // is an Expr, and each operator is also kept as a Token with
+    // its lexeme.
+    private static final double PARSER_BYTES_PER_NODE = 96;
+
+    // The bytes that the Interpreter may allocate per top-level
+    // expression. Evaluation allocates nothing.
+    private static final double INTERPRETER_BYTES_PER_EXPRESSION = 1;
+
+    // The amount of times each path is run before it is measured.
+    private static final int WARMUP_RUNS = 30;
+
+    // The amount of times each path is run while it is measured.
+    private static final int MEASURED_RUNS = 10;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    // A program of small top-level expressions.
+    private static String source;
+
+    @BeforeAll
+    static void setup()
+    {
+        assumeTrue(ManagementFactory.getThreadMXBean() 
+            instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) 
+            ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        source = program(5_000);
+    }
+
+    @Test
+    void lexerAllocationPerToken()
+    {
+        TokenBuffer buffer = new TokenBuffer(source, 1024);
+        int tokens = lex(buffer);
+
+        for (int i = 0; i < WARMUP_RUNS; i++) lex(buffer);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) lex(buffer);
+        long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertWithinBudget("Lexer", "token", bytes, 
+            (long) tokens * MEASURED_RUNS, LEXER_BYTES_PER_TOKEN);
+    }
+
+    @Test
+    void parserAllocationPerNode()
+    {
+        int nodes = 0;
+        for (Expr expr : parse())
+            nodes += count(expr);
+
+        for (int i = 0; i < WARMUP_RUNS; i++) parse();
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) parse();
+        long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertWithinBudget("Parser", "node", bytes, 
+            (long) nodes * MEASURED_RUNS, PARSER_BYTES_PER_NODE);
+    }
+
+    @Test
+    void interpreterAllocationPerExpression()
+    {
+        List<Expr> expressions = parse();
+        Interpreter interpreter = new Interpreter();
+        double[] sum = new double[1];
+        DoubleConsumer sink = value -> sum[0] += value;
+
+        for (int i = 0; i < WARMUP_RUNS; i++) 
+            interpreter.interpret(expressions, sink);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) 
+            interpreter.interpret(expressions, sink);
+        long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertWithinBudget("Interpreter", "expression", bytes,
+            (long) expressions.size() * MEASURED_RUNS, 
+            INTERPRETER_BYTES_PER_EXPRESSION);
+    }
+
+    /*
+     * Scans the program into the buffer, as the Parser would.
+     *
+     * @return The amount of tokens.
+     */
+    private static int lex(TokenBuffer buffer)
+    {
+        Lexer lexer = new Lexer(source);
+        int tokens = 0;
+
+        do
+        {
+            buffer.clear();
+            lexer.fill(buffer);
+            tokens += buffer.size();
+        }
+        while (buffer.type(buffer.size() - 1) != TokenType.EOF);
+
+        return tokens;
+    }
+
+    private static List<Expr> parse()
+    {
+        return new Parser(new Lexer(source)).parse();
+    }
+
+    /*
+     * Returns the amount of nodes of an expression.
+     */
+    private static int count(Expr expr)
+    {
+        if (expr instanceof Expr.Binary)
+        {
+            Expr.Binary binary = (Expr.Binary) expr;
+            return 1 + count(binary.first) + count(binary.second);
+        }
+
+        if (expr instanceof Expr.Unary)
+            return 1 + count(((Expr.Unary) expr).right);
+
+        return 1;
+    }
+
+    private static void assertWithinBudget(String path, String unit, 
+        long bytes, long units, double budget)
+    {
+        double perUnit = (double) bytes / units;
+        assertTrue(perUnit <= budget, String.format("%s allocated %.2f bytes " +
+            "per %s, over its budget of %.2f", path, perUnit, unit, budget));
+    }
+
+    /*
+     * Generates a program of small top-level expressions, with
+     * integers, decimals, unary operators, and comments.
+     */
+    private static String program(int forms)
+    {
+        Random random = new Random(17);
+        StringBuilder program = new StringBuilder();
+
+        for (int i = 0; i < forms; i++)
+        {
+            if (i % 10 == 0) program.append("// Forms ").append(i).append('\n');
+            if (i % 25 == 0) program.append("/* A block\n   comment */\n");
+
+            form(program, random, 2);
+            program.append('\n');
+        }
+
+        return program.toString();
+    }
+
+    private static void form(StringBuilder program, Random random, int depth)
+    {
+        char operator = "+-*/".charAt(random.nextInt(4));
+        int operands = 2 + random.nextInt(3);
+
+        program.append('(').append(operator);
+
+        for (int i = 0; i < operands; i++)
+        {
+            program.append(' ');
+
+            if (operator == '/' && i > 0)
+                program.append(1 + random.nextInt(99));
+            else if (depth > 0 && random.nextInt(3) == 0)
+                form(program, random, depth - 1);
+            else
+            {
+                if (random.nextInt(6) == 0) program.append('-');
+                program.append(random.nextInt(1000));
+                if (random.nextBoolean())
+                    program.append('.').append(random.nextInt(1000));
+            }
+        }
+
+        program.append(')');
+    }
+}
@@ -0,0 +1,105 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Asserts that a file with an error does not keep a Batch from
+// running the files after it: each file has a section of its own
+// with its values and errors, and the exit status is that of the
+// worst error.
+class BatchTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void errorsAreReportedInTheSectionsOfTheirFiles() throws IOException
+    {
+        Path parse = Files.writeString(directory.resolve("parse.in"), 
+            "(+ 1 2)\n(* 3)\n");
+        Path divide = Files.writeString(directory.resolve("divide.in"), 
+            "(/ 1 0)\n");
+        Path missing = directory.resolve("missing.in");
+
+        String output = run(new Interpreter(), 
+            List.of(parse, divide, missing), 65);
+
+        assertEquals("==> " + parse + " <==\n"
+            + "3\n"
+            + parse + ":2:5: ParseError: Expected an expression starting "
+                + "with either \"(\", \"+\", \"-\", or a number\n"
+            + "\t(* 3)\n"
+            + "\t    ^\n"
+            + "==> " + divide + " <==\n"
+            + divide + ":1:2: RuntimeError: Cannot divide by 0\n"
+            + "\t(/ 1 0)\n"
+            + "\t ^\n"
+            + "==> " + missing + " <==\n"
+            + "Could not read " + missing + ": java.nio.file.NoSuchFileException: "
+                + missing + "\n", output);
+    }
+
+    @Test
+    void fileThatFailsDoesNotAbortTheFilesAfterIt() throws IOException
+    {
+        Path failing = Files.writeString(directory.resolve("failing.in"), 
+            "(+ 13 1)\n");
+        Path valid = Files.writeString(directory.resolve("valid.in"), 
+            "(* 2 3)\n");
+
+        // An Interpreter with a bug: it fails on the number 13.
+        Interpreter interpreter = new Interpreter()
+        {
+            @Override
+            public double visitNumberExpr(Expr.Number expr)
+            {
+                if (expr.value == 13)
+                    throw new IllegalStateException("Unlucky number");
+
+                return super.visitNumberExpr(expr);
+            }
+        };
+
+        String output = run(interpreter, List.of(failing, valid), 70);
+
+        assertEquals("==> " + failing + " <==\n"
+            + "Could not run " + failing + ": "
+                + "java.lang.IllegalStateException: Unlucky number\n"
+            + "==> " + valid + " <==\n"
+            + "6\n", output);
+    }
+
+    /*
+     * Runs the files in a Batch and asserts its exit status.
+     *
+     * @return The output of the Batch.
+     */
+    private String run(Interpreter interpreter, List<Path> files, int status) 
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        try
+        {
+            assertEquals(status, new Batch(interpreter, Engine.INTERPRETER, pool)
+                .run(files, out));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import org.junit.jupiter.api.Test;
+
+// Asserts that the DoubleFormatter, both on its own and through an
+// OutputBuffer, writes every double exactly as Double.toString does,
+// without the trailing ".0" of an integer, for doubles that are
+// generated from fixed seeds: integers, doubles of 10^7 and more,
+// which are written with an exponent, subnormal doubles, doubles 
+// next to zero and negative zero, and doubles of any bits.
+class DoubleFormatterTest
+{
+    // The amount of doubles generated for each kind.
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    void integersAreFormattedAsDoubleToString()
+    {
+        Random random = new Random(47);
+
+        assertFormatted(SAMPLES, () -> random.nextInt(1000) - 500);
+        assertFormatted(SAMPLES, () -> (double) (random.nextLong() >> 11));
+
+        // Greater than 2^53, which are left to Double.toString.
+        assertFormatted(SAMPLES, () -> Math.scalb((double) (random.nextLong() >>> 11), 
+            1 + random.nextInt(200)));
+    }
+
+    @Test
+    void largeDoublesAreFormattedAsDoubleToString()
+    {
+        Random random = new Random(53);
+
+        assertFormatted(1, () -> 1e7);
+        assertFormatted(1, () -> 9999999);
+        assertFormatted(1, () -> 9999999.5);
+        assertFormatted(1, () -> 1e23);
+        assertFormatted(1, () -> Double.MAX_VALUE);
+        assertFormatted(SAMPLES, () -> (1 + random.nextDouble()) 
+            * Math.pow(10, 7 + random.nextInt(300)));
+        assertFormatted(SAMPLES, () -> Math.round(random.nextDouble() * 1e6) 
+            * Math.pow(10, 1 + random.nextInt(20)));
+    }
+
+    @Test
+    void subnormalDoublesAreFormattedAsDoubleToString()
+    {
+        Random random = new Random(59);
+
+        assertFormatted(1, () -> Double.MIN_VALUE);
+        assertFormatted(1, () -> Double.MIN_NORMAL - Double.MIN_VALUE);
+        assertFormatted(SAMPLES, () -> Double.longBitsToDouble(
+            random.nextLong() & ((1L << 52) - 1) | random.nextLong() & Long.MIN_VALUE));
+    }
+
+    @Test
+    void doublesNextToNegativeZeroAreFormattedAsDoubleToString()
+    {
+        Random random = new Random(61);
+
+        assertFormatted(1, () -> -0.0);
+        assertFormatted(1, () -> 0.0);
+        assertFormatted(1, () -> -Double.MIN_VALUE);
+        assertFormatted(1, () -> -Double.MIN_NORMAL);
+        assertFormatted(1, () -> -1e-3);
+        assertFormatted(1, () -> -0.0009999999999999998);
+        assertFormatted(SAMPLES, () -> -Math.scalb(1 + random.nextDouble(), 
+            -1 - random.nextInt(1022)));
+        assertFormatted(SAMPLES, () -> -random.nextInt(1_000_000) 
+            / Math.pow(10, random.nextInt(12)));
+    }
+
+    @Test
+    void doublesOfAnyBitsAreFormattedAsDoubleToString()
+    {
+        Random random = new Random(67);
+
+        assertFormatted(1, () -> Double.POSITIVE_INFINITY);
+        assertFormatted(1, () -> Double.NEGATIVE_INFINITY);
+        assertFormatted(1, () -> Double.NaN);
+        assertFormatted(SAMPLES, () -> Double.longBitsToDouble(random.nextLong()));
+    }
+
+    /*
+     * Asserts that an amount of doubles are each formatted, both 
+     * with DoubleFormatter.toString and through an OutputBuffer,
+     * as Double.toString formats them, without a trailing ".0".
+     */
+    private static void assertFormatted(int amount, DoubleSupplier doubles)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputBuffer buffer = new OutputBuffer(out);
+        double[] values = new double[amount];
+
+        for (int i = 0; i < amount; i++)
+        {
+            double value = doubles.getAsDouble();
+            assertEquals(expected(value), DoubleFormatter.toString(value), 
+                () -> Double.toHexString(value));
+            buffer.println(value);
+            values[i] = value;
+        }
+
+        buffer.flush();
+        String[] lines = out.toString(StandardCharsets.US_ASCII)
+            .split(System.lineSeparator());
+
+        assertEquals(amount, lines.length);
+        for (int i = 0; i < amount; i++)
+            assertEquals(expected(values[i]), lines[i]);
+    }
+
+    /*
+     * Returns Double.toString of a value, without the trailing 
+     * ".0" of an integer.
+     */
+    private static String expected(double value)
+    {
+        String text = Double.toString(value);
+        return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+    }
+}
@@ -0,0 +1,180 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+// Asserts that each of the engines that compile an expression gives
+// it the value that the Interpreter gives it, and fails with the same
+// error at the same line and column. The forms are far too wide or
+// too deeply nested to be compiled or evaluated recursively, and too
+// large for their bytecode to fit in a single method. The Chunk that
+// the Parser encodes without an AST is the one compiled from the AST.
+class EngineTest
+{
+    // The engines, each of which compiles an expression into
+    // something that evaluates it.
+    enum Engine
+    {
+        COMPILER
+        {
+            @Override
+            DoubleSupplier compile(Expr expr)
+            {
+                return new Compiler().compile(expr);
+            }
+        },
+
+        BYTECODE
+        {
+            @Override
+            DoubleSupplier compile(Expr expr)
+            {
+                // An expression whose constants do not fit in a
+                // class file is compiled by the Compiler instead.
+                Node node = new BytecodeCompiler().compile(expr);
+                assertTrue(node.getClass().isHidden(), "Compiled by the Compiler");
+                return node;
+            }
+        },
+
+        VIRTUAL_MACHINE
+        {
+            @Override
+            DoubleSupplier compile(Expr expr)
+            {
+                Chunk chunk = new ChunkCompiler().compile(expr);
+                VirtualMachine vm = new VirtualMachine();
+                return () -> vm.execute(chunk);
+            }
+        };
+
+        abstract DoubleSupplier compile(Expr expr);
+    }
+
+    // The amount of operands of a wide form, and of forms in a
+    // deeply nested one.
+    private static final int SIZE = 20_000;
+
+    // The amount of operands of a division whose bytecode is three
+    // times as large as a class file may hold in one method: each
+    // division is 11 bytes of code.
+    private static final int SPLIT_SIZE = 3 * 64 * 1024 / 11;
+
+    private final Interpreter interpreter = new Interpreter();
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void wideFormsHaveTheValuesOfTheInterpreter(Engine engine)
+    {
+        Random random = new Random(3);
+
+        for (char operator : "+-*/".toCharArray())
+            assertSameValue(engine, TestPrograms.wide(operator, SIZE, random));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void deepFormsHaveTheValuesOfTheInterpreter(Engine engine)
+    {
+        Random random = new Random(5);
+
+        for (int i = 0; i < 4; i++)
+            assertSameValue(engine, TestPrograms.deep(SIZE, random));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void shallowFormsHaveTheValuesOfTheInterpreter(Engine engine)
+    {
+        Random random = new Random(7);
+
+        // Around the height of the tallest expression
+        // that is evaluated recursively.
+        for (int size : new int[] {2, 3, 999, 1000, 1001, 1002})
+        {
+            assertSameValue(engine, TestPrograms.wide('-', size, random));
+            assertSameValue(engine, TestPrograms.deep(size, random));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void divisionByZeroIsReportedWhereTheInterpreterReportsIt(Engine engine)
+    {
+        Random random = new Random(11);
+        String wide = TestPrograms.wide('/', SPLIT_SIZE, random);
+
+        assertSameError(engine, TestPrograms.zero(wide, 1));
+        assertSameError(engine, TestPrograms.zero(wide, SPLIT_SIZE / 2));
+        assertSameError(engine, TestPrograms.zero(wide, SPLIT_SIZE - 1));
+        assertSameError(engine, TestPrograms.zero(TestPrograms.deep(SIZE, random), 
+            SIZE - 3));
+    }
+
+    @Test
+    void parsedChunksAreThoseCompiledFromTheAst()
+    {
+        Random random = new Random(13);
+        String program = TestPrograms.wide('/', SIZE, random) + "\n"
+            + TestPrograms.deep(SIZE, random) + "\n"
+            + "(+ -(- 1 2) +(* 3 4) -5 +6)\n";
+
+        Parser trees = new Parser(new Lexer(program));
+        Parser chunks = new Parser(new Lexer(program));
+        Expr expr;
+
+        while ((expr = trees.next()) != null)
+        {
+            Chunk expected = new ChunkCompiler().compile(expr);
+            Chunk actual = chunks.nextChunk();
+
+            assertArrayEquals(expected.code, actual.code);
+            assertArrayEquals(expected.constants, actual.constants);
+            assertArrayEquals(expected.positions, actual.positions);
+            assertEquals(expected.maxStack, actual.maxStack);
+        }
+
+        assertNull(chunks.nextChunk());
+        assertEquals(trees.getFormCount(), chunks.getFormCount());
+        assertEquals(trees.getNodeCount(), chunks.getNodeCount());
+    }
+
+    private void assertSameValue(Engine engine, String program)
+    {
+        Expr expr = TestPrograms.parse(program).get(0);
+
+        assertEquals(interpret(expr), engine.compile(expr).getAsDouble());
+    }
+
+    private void assertSameError(Engine engine, String program)
+    {
+        Expr expr = TestPrograms.parse(program).get(0);
+        DoubleSupplier compiled = engine.compile(expr);
+
+        RuntimeError expected = assertThrows(RuntimeError.class, 
+            () -> interpret(expr));
+        RuntimeError actual = assertThrows(RuntimeError.class, 
+            compiled::getAsDouble);
+
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.getToken().line, actual.getToken().line);
+        assertEquals(expected.getToken().column, actual.getToken().column);
+    }
+
+    private double interpret(Expr expr)
+    {
+        double[] value = new double[1];
+        interpreter.interpret(expr, result -> value[0] = result);
+        return value[0];
+    }
+}
@@ -0,0 +1,79 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+// Asserts that a program that is run with a FormCache writes exactly
+// what it writes without one, whether its forms are found in the
+// cache or not, and that the error of a cached form is reported 
+// where the form is now without the form being run again.
+class FormCacheTest
+{
+    // A form that is long enough to be cached, and one that throws
+    // a RuntimeError on its first line and one on its second line.
+    private static final String VALUE = 
+        "(+ 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 21 22 23 24)";
+    private static final String ERROR =
+        "(+ 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 (/ 1 (- 2 2)))";
+    private static final String LATER_ERROR =
+        "(+ 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20\n    (/ 1 (- 2 2)))";
+
+    @Test
+    void valuesOfCachedFormsArePrinted()
+    {
+        FormCache cache = new FormCache(1024 * 1024);
+
+        assertSameOutput(cache, VALUE + "\n" + VALUE + "\n");
+        assertSameOutput(cache, "(* 2 3) " + VALUE + "\n");
+
+        // The second form of the first program is looked up before
+        // the first has been run.
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void errorsOfCachedFormsAreReportedWhereTheFormsAreNow()
+    {
+        FormCache cache = new FormCache(1024 * 1024);
+
+        assertSameOutput(cache, ERROR + "\n");
+        assertSameOutput(cache, "(* 2 3)   " + ERROR + "\n");
+        assertSameOutput(cache, "\n// Moved\n  " + ERROR + "\n");
+        assertEquals(2, cache.getHits());
+
+        assertSameOutput(cache, LATER_ERROR + "\n");
+        assertSameOutput(cache, "(* 2 3)\n\n   " + LATER_ERROR + " (* 4 5)\n");
+        assertEquals(3, cache.getHits());
+    }
+
+    /*
+     * Asserts that a program writes the same with the cache as
+     * without it.
+     */
+    private static void assertSameOutput(FormCache cache, String program)
+    {
+        assertEquals(run(null, program), run(cache, program));
+    }
+
+    /*
+     * Runs a program in a Session and returns what it wrote, along
+     * with its exit status.
+     */
+    private static String run(FormCache cache, String program)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        Session session = new Session(new Interpreter(), null, output, stream, stream);
+        session.cache = cache;
+        session.filename = "p.in";
+
+        session.run(ByteBuffer.wrap(program.getBytes(StandardCharsets.US_ASCII)));
+        return output.toString(StandardCharsets.UTF_8) + "exit " + session.exitCode();
+    }
+}
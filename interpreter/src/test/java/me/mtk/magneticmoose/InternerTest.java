@@ -0,0 +1,71 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Asserts that interning the nodes of a program (see Interner) shares
+// its equal subexpressions without changing what it evaluates to, even
+// where a wide form is reduced in parallel.
+class InternerTest
+{
+    // More operands than the least amount that is reduced in parallel.
+    private static final int WIDE = 4096;
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void setup()
+    {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void teardown()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    void equalSubexpressionsAreTheSameNode()
+    {
+        List<Expr> expressions = parse("(* (+ 1 2) 3)\n(- (+ 1 2) 3)", true);
+
+        assertSame(((Expr.Binary) expressions.get(0)).first, 
+            ((Expr.Binary) expressions.get(1)).first);
+    }
+
+    @Test
+    void sharedFirstOperandDoesNotShortenAWideForm()
+    {
+        // The first two operands of the wide form are interned as the
+        // node of the first form, whose operator token is not that of
+        // the wide form. Compensated summation recovers the 1 that is
+        // lost when it is added to 1e16 only if both forms are reduced
+        // with the same operands.
+        StringBuilder source = new StringBuilder();
+        source.append("(+ 10000000000000000 1)\n");
+        source.append("(+ 10000000000000000 1");
+        for (int i = 0; i < WIDE; i++) source.append(" 1");
+        source.append(" -10000000000000000)\n");
+
+        Interpreter interpreter = new Interpreter(pool, true);
+
+        List<String> expected = interpreter.interpret(parse(source, false));
+        List<String> actual = interpreter.interpret(parse(source, true));
+
+        assertEquals(List.of("1.0E16", String.valueOf(WIDE + 1)), expected);
+        assertEquals(expected, actual);
+    }
+
+    private static List<Expr> parse(CharSequence source, boolean intern)
+    {
+        return new Parser(new Lexer(source), intern).parse();
+    }
+}
@@ -0,0 +1,106 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// Asserts that a block comment that is not closed before the end of
+// file is scanned into an UNTERMINATED_COMMENT token at its "/*",
+// and that the Parser reports it as a ParseError on that token. The
+// lines and lexemes of a file in UTF-8 are decoded as such, and its
+// columns count characters rather than bytes, whether the file is
+// scanned whole or one segment at a time (see FormIndex).
+class LexerTest
+{
+    @Test
+    void unterminatedCommentIsATokenAtItsStart()
+    {
+        List<Token> tokens = new Lexer("(+ 1 2)\n  /* open\n(* 3 4)").getTokens();
+
+        assertEquals(List.of(TokenType.LPAREN, TokenType.PLUS, 
+            TokenType.NUMBER, TokenType.NUMBER, TokenType.RPAREN, 
+            TokenType.UNTERMINATED_COMMENT, TokenType.EOF), 
+            tokens.stream().map(token -> token.type).toList());
+
+        Token comment = tokens.get(5);
+        assertEquals(2, comment.line);
+        assertEquals(3, comment.column);
+    }
+
+    @Test
+    void closedCommentIsSkipped()
+    {
+        List<Token> tokens = new Lexer("/* (+ 1 2) */ 3").getTokens();
+
+        assertEquals(List.of(TokenType.NUMBER, TokenType.EOF), 
+            tokens.stream().map(token -> token.type).toList());
+    }
+
+    @Test
+    void parserReportsUnterminatedComment()
+    {
+        Parser parser = new Parser(new Lexer("(+ 1 (* 2 /* 3 4))"));
+
+        ParseError error = assertThrows(ParseError.class, parser::parse);
+
+        assertEquals("Unterminated block comment", error.getMessage());
+        assertEquals(1, error.getToken().line);
+        assertEquals(11, error.getToken().column);
+    }
+
+    @Test
+    void utf8LinesAndLexemesAreDecodedAndColumnsCountCharacters()
+    {
+        CharSequence source = utf8("(+ 1 é)\n/* ü */ (+ 2 ü)");
+        Lexer lexer = new Lexer(source);
+        List<Token> tokens = lexer.getTokens();
+
+        Token first = tokens.get(3);
+        assertEquals(TokenType.UNIDENTIFIED, first.type);
+        assertEquals("é", first.lexeme);
+        assertEquals(6, first.column);
+        assertEquals("(+ 1 é)", lexer.getLine(1));
+
+        assertEquals(9, tokens.get(5).column);
+        assertEquals(14, tokens.get(8).column);
+        assertEquals("/* ü */ (+ 2 ü)", lexer.getLine(2));
+    }
+
+    @Test
+    void segmentsHaveTheColumnsOfTheWholeFile()
+    {
+        CharSequence source = utf8("(+ 1 2) /* ü */ (+ 3 4)\n(- é) (+ 5 6)");
+        FormIndex forms = new FormIndex(source);
+        List<Token> whole = new Lexer(source).getTokens();
+        int index = 0;
+
+        for (int i = 0; i < forms.size(); i++)
+        {
+            for (Token token : forms.lexer(source, i, i + 1).getTokens())
+            {
+                if (token.type == TokenType.EOF) continue;
+
+                Token expected = whole.get(index++);
+                assertEquals(expected.lexeme, token.lexeme);
+                assertEquals(expected.line, token.line);
+                assertEquals(expected.column, token.column);
+            }
+        }
+
+        assertEquals(whole.size() - 1, index);
+    }
+
+    /*
+     * Returns the bytes of a program in UTF-8, as the Lexer
+     * scans a file.
+     */
+    private static CharSequence utf8(String program)
+    {
+        return new ByteSequence(ByteBuffer.wrap(program.getBytes(StandardCharsets.UTF_8)));
+    }
+}
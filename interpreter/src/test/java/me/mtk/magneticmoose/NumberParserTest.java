@@ -0,0 +1,161 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Asserts that NumberParser.parse gives the very same double as
+// Double.parseDouble for numbers that are generated from fixed seeds
+// to take each of its paths: Clinger's fast path, the algorithm of
+// Eisel and Lemire, and the fallback to Double.parseDouble, along
+// with numbers that have long mantissas, leading zeros, or lie
+// exactly halfway between two doubles.
+class NumberParserTest
+{
+    // The amount of numbers generated for each path.
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    void fastPathNumbersAreParsedExactly()
+    {
+        Random random = new Random(23);
+
+        // At most 2^53, with at most 22 digits after the point.
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            String digits = Long.toString(random.nextLong() >>> 11);
+            assertSameDouble(point(digits, random.nextInt(Math.min(23, 
+                digits.length() + 1))));
+        }
+    }
+
+    @Test
+    void eiselLemireNumbersAreParsedExactly()
+    {
+        Random random = new Random(29);
+
+        // 16 to 19 significant digits, or more than 22 digits
+        // after the point, down to the smallest normal doubles.
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            String digits = digits(16 + random.nextInt(4), random);
+            int zeros = random.nextInt(300);
+            assertSameDouble(point(digits, random.nextInt(digits.length() + 1))
+                .replace(".", "." + "0".repeat(zeros)));
+        }
+    }
+
+    @Test
+    void fallbackNumbersAreParsedExactly()
+    {
+        Random random = new Random(31);
+
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            // More than 19 significant digits.
+            String digits = digits(20 + random.nextInt(30), random);
+            assertSameDouble(point(digits, random.nextInt(digits.length() + 1)));
+
+            // Subnormal, or so small that it rounds to zero.
+            digits = digits(1 + random.nextInt(19), random);
+            assertSameDouble("0." + "0".repeat(300 + random.nextInt(50)) + digits);
+        }
+    }
+
+    @Test
+    void longMantissasAreParsedExactly()
+    {
+        Random random = new Random(37);
+
+        for (int i = 0; i < SAMPLES / 10; i++)
+        {
+            String digits = digits(50 + random.nextInt(750), random);
+            assertSameDouble(point(digits, random.nextInt(digits.length() + 1)));
+        }
+    }
+
+    @Test
+    void halfwayNumbersAreParsedExactly()
+    {
+        Random random = new Random(41);
+
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            // A double between 2^-30 and 2^64, and the number halfway
+            // between it and the next one, which is rounded to the
+            // one whose mantissa is even, and the numbers next to it.
+            double value = Math.scalb(1 + random.nextDouble(), 
+                -30 + random.nextInt(94));
+            BigDecimal halfway = new BigDecimal(value)
+                .add(new BigDecimal(Math.ulp(value)).divide(BigDecimal.valueOf(2)));
+            BigDecimal last = BigDecimal.ONE.movePointLeft(Math.max(halfway.scale(), 0));
+
+            assertSameDouble(halfway.toPlainString());
+            assertSameDouble(halfway.add(last).toPlainString());
+            assertSameDouble(halfway.subtract(last).toPlainString());
+        }
+    }
+
+    @Test
+    void leadingZerosAreParsedExactly()
+    {
+        Random random = new Random(43);
+
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            String digits = digits(1 + random.nextInt(25), random);
+            assertSameDouble("0".repeat(random.nextInt(30)) 
+                + point(digits, random.nextInt(digits.length() + 1)));
+        }
+
+        for (String number : new String[] {"0", "000", "0.0", "00.000", 
+            "0.000000000000000000000000001", "000000000000000000000000001"})
+            assertSameDouble(number);
+    }
+
+    /*
+     * Asserts that the number is parsed into the same double as
+     * Double.parseDouble parses it, when it is in the middle of 
+     * a source program.
+     */
+    private static void assertSameDouble(String number)
+    {
+        String source = "(+ " + number + ")";
+        double expected = Double.parseDouble(number);
+        double actual = NumberParser.parse(source, 3, 3 + number.length());
+
+        assertEquals(Double.doubleToRawLongBits(expected), 
+            Double.doubleToRawLongBits(actual), number);
+    }
+
+    /*
+     * Returns the given amount of random decimal digits, the first
+     * of which is not zero.
+     */
+    private static String digits(int count, Random random)
+    {
+        StringBuilder digits = new StringBuilder(count);
+        digits.append((char) ('1' + random.nextInt(9)));
+
+        for (int i = 1; i < count; i++)
+            digits.append((char) ('0' + random.nextInt(10)));
+
+        return digits.toString();
+    }
+
+    /*
+     * Places a point before the given amount of final digits,
+     * or no point if the amount is 0.
+     */
+    private static String point(String digits, int fractionDigits)
+    {
+        if (fractionDigits == 0) return digits;
+
+        int point = digits.length() - fractionDigits;
+        return (point == 0 ? "0" : digits.substring(0, point)) 
+            + "." + digits.substring(point);
+    }
+}
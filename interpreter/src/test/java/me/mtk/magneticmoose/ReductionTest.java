@@ -0,0 +1,215 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Asserts the floating-point semantics of reducing wide additions and
+// multiplications in parallel, as documented by the Interpreter: a
+// parallel sum or product differs from the in-order one by no more
+// than the documented bound, a compensated sum is within its bound
+// of the exact sum, and forms of fewer than MIN_REDUCTION_OPERANDS
+// operands are evaluated in order.
+class ReductionTest
+{
+    // The unit roundoff of a double.
+    private static final double U = Math.ulp(1.0) / 2;
+
+    // The amount of operands of a wide form.
+    private static final int SIZE = 100_000;
+
+    private static ForkJoinPool pool;
+
+    private final Interpreter sequential = new Interpreter();
+
+    @BeforeAll
+    static void setup()
+    {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void teardown()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    void parallelSumIsWithinTheBoundOfTheInOrderSum()
+    {
+        Random random = new Random(13);
+        double[] operands = new double[SIZE];
+
+        // Operands of both signs over twelve orders of magnitude.
+        for (int i = 0; i < SIZE; i++)
+            operands[i] = (2 * random.nextDouble() - 1) 
+                * Math.pow(10, random.nextInt(13));
+
+        Expr expr = parse('+', operands);
+        double inOrder = evaluate(sequential, expr);
+        double parallel = evaluate(new Interpreter(pool, false), expr);
+
+        assertTrue(Math.abs(parallel - inOrder) 
+            <= 2 * gamma(SIZE - 1) * sumOfMagnitudes(operands),
+            parallel + " is too far from " + inOrder);
+    }
+
+    @Test
+    void parallelProductIsWithinTheBoundOfTheInOrderProduct()
+    {
+        Random random = new Random(17);
+        double[] operands = new double[SIZE];
+
+        // Operands close to 1, so that the product does not
+        // overflow or underflow.
+        for (int i = 0; i < SIZE; i++)
+            operands[i] = 1 + (random.nextDouble() - 0.5) / 100;
+
+        Expr expr = parse('*', operands);
+        double inOrder = evaluate(sequential, expr);
+        double parallel = evaluate(new Interpreter(pool, false), expr);
+
+        // Both are within a relative error of gamma of the exact
+        // product p, so they differ by at most 2 gamma |p|, and
+        // |p| <= |inOrder| / (1 - gamma).
+        double gamma = gamma(SIZE - 1);
+
+        assertTrue(Math.abs(parallel - inOrder) 
+            <= 2 * gamma * Math.abs(inOrder) / (1 - gamma),
+            parallel + " is too far from " + inOrder);
+    }
+
+    @Test
+    void compensatedSumIsWithinTheBoundOfTheExactSum()
+    {
+        Random random = new Random(19);
+        double[] operands = new double[SIZE];
+
+        // Pairs of large operands that cancel each other, among small
+        // ones, so that the in-order sum loses most of the small ones.
+        for (int i = 0; i < SIZE; i += 4)
+        {
+            double large = Math.floor(random.nextDouble() * 1e16);
+            operands[i] = large;
+            operands[i + 1] = -large;
+            operands[i + 2] = random.nextDouble();
+            operands[i + 3] = random.nextDouble();
+        }
+
+        for (int i = SIZE - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            double operand = operands[i];
+            operands[i] = operands[j];
+            operands[j] = operand;
+        }
+
+        BigDecimal exact = BigDecimal.ZERO;
+        for (double operand : operands)
+            exact = exact.add(new BigDecimal(operand));
+
+        Expr expr = parse('+', operands);
+        double compensated = evaluate(new Interpreter(pool, true), expr);
+        double error = new BigDecimal(compensated).subtract(exact).abs().doubleValue();
+
+        double bound = 2 * U * Math.abs(exact.doubleValue()) 
+            + 2 * (SIZE * U) * (SIZE * U) * sumOfMagnitudes(operands);
+
+        assertTrue(error <= bound, "Error " + error + " exceeds " + bound);
+
+        // The in-order sum is nowhere near as close.
+        double inOrderError = new BigDecimal(evaluate(sequential, expr))
+            .subtract(exact).abs().doubleValue();
+        assertTrue(inOrderError > 1000 * bound);
+    }
+
+    @Test
+    void formsOfFewerOperandsAreNotReduced()
+    {
+        Interpreter compensated = new Interpreter(pool, true);
+        int min = Interpreter.MIN_REDUCTION_OPERANDS;
+
+        // In order, every 1 is lost when it is added to 1e16, and
+        // the sum is 0. Compensated, none is lost.
+        assertEquals(0, evaluate(compensated, cancelling(min - 1)));
+        assertEquals(min - 2, evaluate(compensated, cancelling(min)));
+    }
+
+    @Test
+    void firstErrorInTheSourceIsThrown()
+    {
+        StringBuilder source = new StringBuilder("(+");
+        for (int i = 0; i < SIZE; i++)
+            source.append(i == 100 || i == SIZE - 100 ? " (/ 1 0)" : " 1");
+        source.append(')');
+
+        Expr expr = new Parser(new Lexer(source)).parse().get(0);
+
+        RuntimeError expected = assertThrows(RuntimeError.class, 
+            () -> evaluate(sequential, expr));
+        RuntimeError actual = assertThrows(RuntimeError.class, 
+            () -> evaluate(new Interpreter(pool, false), expr));
+
+        assertEquals(expected.getToken().column, actual.getToken().column);
+    }
+
+    /*
+     * Returns a sum of 1e16, ones, and -1e16, with the given
+     * amount of operands in all.
+     */
+    private static Expr cancelling(int operands)
+    {
+        StringBuilder source = new StringBuilder("(+ 10000000000000000");
+        for (int i = 0; i < operands - 2; i++) source.append(" 1");
+        source.append(" -10000000000000000)");
+
+        return new Parser(new Lexer(source)).parse().get(0);
+    }
+
+    /*
+     * Returns a form of the given operator whose operands have 
+     * the given values.
+     */
+    private static Expr parse(char operator, double[] operands)
+    {
+        StringBuilder source = new StringBuilder();
+        source.append('(').append(operator);
+
+        // Each literal is the exact decimal value of its operand,
+        // so it is parsed into that very value.
+        for (double operand : operands)
+            source.append(' ').append(new BigDecimal(operand).toPlainString());
+
+        return new Parser(new Lexer(source.append(')'))).parse().get(0);
+    }
+
+    private static double evaluate(Interpreter interpreter, Expr expr)
+    {
+        double[] value = new double[1];
+        interpreter.interpret(expr, result -> value[0] = result);
+        return value[0];
+    }
+
+    private static double gamma(int n)
+    {
+        return n * U / (1 - n * U);
+    }
+
+    private static double sumOfMagnitudes(double[] operands)
+    {
+        double sum = 0;
+        for (double operand : operands) sum += Math.abs(operand);
+
+        // Enlarged by the most that its own rounding errors
+        // could have made it smaller.
+        return sum * (1 + gamma(operands.length));
+    }
+}
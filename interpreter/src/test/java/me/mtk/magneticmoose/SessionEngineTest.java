@@ -0,0 +1,101 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+// Asserts that a Session writes exactly what it writes with the
+// Interpreter, and exits with the same status, whichever engine
+// evaluates its forms, whether the forms are run in batches, in
+// parallel, or with a FormCache.
+class SessionEngineTest
+{
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void programsWriteWhatTheyWriteWithTheInterpreter(Engine engine)
+    {
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        try
+        {
+            for (String program : programs())
+            {
+                assertSameOutput(engine, program, null, null);
+                assertSameOutput(engine, program, pool, null);
+                assertSameOutput(engine, program, null, new FormCache(1024 * 1024));
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * Returns programs of values, of errors of each kind, and of
+     * more forms than a Session parses in a batch.
+     */
+    private static List<String> programs()
+    {
+        Random random = new Random(17);
+        String wide = TestPrograms.wide('/', 2000, random);
+        String deep = TestPrograms.deep(2000, random);
+
+        StringBuilder many = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+            many.append("(+ ").append(i).append(" 0.5)\n");
+
+        List<String> programs = new ArrayList<>();
+        programs.add("(+ 1 2)\n(- (* 2 3) -(/ 1 4) +5)\n(/ 7 2 2)\n");
+        programs.add("(+ 1 2)\n(/ 1 (- 2 2))\n(+ 3 4)\n");
+        programs.add("(+ 1 2)\n(* 3)\n");
+        programs.add("(+ 1 2)\n(- 3 -x)\n");
+        programs.add("(+ 1 2)\n(% 3 4)\n");
+        programs.add("(+ 1 2)\n(- 3 (+ 4 5)");
+        programs.add("(+ 1 2)\n/* open");
+        programs.add(wide + "\n" + deep + "\n");
+        programs.add(TestPrograms.zero(deep, 1000) + "\n" + wide + "\n");
+        programs.add(many.toString());
+        programs.add(many + "(/ 1 0)\n" + many);
+        return programs;
+    }
+
+    /*
+     * Asserts that a program writes the same with the engine
+     * as with the Interpreter.
+     */
+    private static void assertSameOutput(Engine engine, String program,
+        ForkJoinPool pool, FormCache cache)
+    {
+        assertEquals(run(Engine.INTERPRETER, program, pool, null),
+            run(engine, program, pool, cache));
+    }
+
+    /*
+     * Runs a program in a Session and returns what it wrote, along
+     * with its exit status.
+     */
+    private static String run(Engine engine, String program, ForkJoinPool pool,
+        FormCache cache)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        Session session = new Session(new Interpreter(), pool, output, stream, stream);
+        session.engine = engine;
+        session.cache = cache;
+        session.filename = "p.in";
+
+        session.run(ByteBuffer.wrap(program.getBytes(StandardCharsets.US_ASCII)));
+        return output.toString(StandardCharsets.UTF_8) + "exit " + session.exitCode();
+    }
+}
@@ -0,0 +1,117 @@
+package me.mtk.magneticmoose;
+
+import java.util.List;
+import java.util.Random;
+
+// Generates the programs with which the tests compare the engines
+// of the interpreter: very wide forms, such as (+ a b c ...), and
+// very deeply nested ones, such as (+ a (- b (* c ...))), which are
+// far too large to be evaluated or compiled recursively. Operands
+// are written a few to a line, so that an error in one has a line
+// and a column of its own.
+final class TestPrograms
+{
+    private static final String OPERATORS = "+-*/";
+
+    private TestPrograms()
+    {
+    }
+
+    /*
+     * Generates a form of a single operator and many operands.
+     *
+     * @param operator The operator, one of + - * /.
+     * @param operands The amount of operands.
+     * @param random The source of the operands.
+     * @return The form.
+     */
+    static String wide(char operator, int operands, Random random)
+    {
+        StringBuilder program = new StringBuilder();
+        program.append('(').append(operator);
+
+        for (int i = 0; i < operands; i++)
+        {
+            program.append(i % 8 == 0 ? '\n' : ' ');
+            number(program, random, operator == '/' && i > 0);
+        }
+
+        return program.append(')').toString();
+    }
+
+    /*
+     * Generates a form that nests forms of random operators, some
+     * of them negated, to the given depth.
+     *
+     * @param depth The amount of nested forms.
+     * @param random The source of the operators and operands.
+     * @return The form.
+     */
+    static String deep(int depth, Random random)
+    {
+        StringBuilder program = new StringBuilder();
+
+        for (int i = 0; i < depth; i++)
+        {
+            char operator = OPERATORS.charAt(random.nextInt(4));
+            if (random.nextInt(10) == 0) program.append('-');
+            program.append('(').append(operator).append(' ');
+            number(program, random, false);
+            program.append(i % 8 == 0 ? '\n' : ' ');
+        }
+
+        program.append('2');
+        for (int i = 0; i < depth; i++) program.append(')');
+
+        return program.toString();
+    }
+
+    /*
+     * Replaces the operand at the given index of a form that wide
+     * or deep generated, counting from the start of the form, with 0.
+     *
+     * @param program The form.
+     * @param index The index of the operand.
+     * @return The form with a 0 in place of the operand.
+     */
+    static String zero(String program, int index)
+    {
+        int start = -1;
+
+        for (int i = 0, count = -1; i < program.length(); i++)
+        {
+            char c = program.charAt(i);
+            boolean begins = (Character.isDigit(c) || c == '.') 
+                && (i == 0 || program.charAt(i - 1) == ' ' 
+                    || program.charAt(i - 1) == '\n');
+
+            if (begins && ++count == index)
+            {
+                start = i;
+                break;
+            }
+        }
+
+        int end = start;
+        while (Character.isDigit(program.charAt(end)) || program.charAt(end) == '.')
+            end++;
+
+        return program.substring(0, start) + "0" + program.substring(end);
+    }
+
+    static List<Expr> parse(String program)
+    {
+        return new Parser(new Lexer(program)).parse();
+    }
+
+    /*
+     * Appends a positive number with a fractional part. A divisor
+     * is less than 3, so that a long quotient shrinks slowly.
+     */
+    private static void number(StringBuilder program, Random random, 
+        boolean isDivisor)
+    {
+        program.append(1 + random.nextInt(isDivisor ? 2 : 9));
+        program.append('.').append(random.nextInt(1000));
+    }
+}
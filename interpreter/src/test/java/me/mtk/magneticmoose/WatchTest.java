@@ -0,0 +1,125 @@
+package me.mtk.magneticmoose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Asserts that a Watch runs only the forms that have changed, 
+// keeping the results of the unchanged forms at the beginning and
+// the end of the file and of the forms that were moved, and that
+// the line and the column of an error are where its form is now.
+class WatchTest
+{
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private ByteArrayOutputStream console;
+    private ByteArrayOutputStream errors;
+    private Watch watch;
+
+    @BeforeEach
+    void createWatch()
+    {
+        file = directory.resolve("p.in");
+        console = new ByteArrayOutputStream();
+        errors = new ByteArrayOutputStream();
+        watch = new Watch("p.in", new Interpreter(), Engine.INTERPRETER, false, 
+            new PrintStream(console), new PrintStream(errors));
+    }
+
+    @Test
+    void unchangedFormsAtTheBeginningAndTheEndAreNotRun() throws IOException
+    {
+        update("(/ 1 0)\n(+ 1 2)\n(* 2 3)\n",
+            "\t(/ 1 0)\n\t ^\np.in:2: 3\np.in:3: 6\n",
+            "p.in:1:2: RuntimeError: Cannot divide by 0\n"
+            + "Ran 3 of 3 forms, 1 with errors, the first at p.in:1:2\n");
+
+        update("(/ 1 0)\n(+ 1 4)\n(* 2 3)\n",
+            "p.in:2: 5\n",
+            "Ran 1 of 3 forms, 1 with errors, the first at p.in:1:2\n");
+    }
+
+    @Test
+    void errorAfterAnEditedFormOnItsLineMovesWithIt() throws IOException
+    {
+        update("(+ 1 2) (/ 1 0)",
+            "p.in:1: 3\n\t(+ 1 2) (/ 1 0)\n\t         ^\n",
+            "p.in:1:10: RuntimeError: Cannot divide by 0\n"
+            + "Ran 2 of 2 forms, 1 with errors, the first at p.in:1:10\n");
+
+        update("(+ 1 22222) (/ 1 0)",
+            "p.in:1: 22223\n",
+            "Ran 1 of 2 forms, 1 with errors, the first at p.in:1:14\n");
+
+        update("(+ 1 2) (/ 2 0)",
+            "p.in:1: 3\n\t(+ 1 2) (/ 2 0)\n\t         ^\n",
+            "p.in:1:10: RuntimeError: Cannot divide by 0\n"
+            + "Ran 2 of 2 forms, 1 with errors, the first at p.in:1:10\n");
+    }
+
+    @Test
+    void movedFormsAreNotRunAgain() throws IOException
+    {
+        update("(/ 1 0)\n(+ 1 2)\n",
+            "\t(/ 1 0)\n\t ^\np.in:2: 3\n",
+            "p.in:1:2: RuntimeError: Cannot divide by 0\n"
+            + "Ran 2 of 2 forms, 1 with errors, the first at p.in:1:2\n");
+
+        update("(+ 1 2)\n(* 3 3)\n   (/ 1 0)\n",
+            "p.in:2: 9\n",
+            "Ran 1 of 3 forms, 1 with errors, the first at p.in:3:5\n");
+    }
+
+    @Test
+    void errorOnALaterLineOfItsFormShiftsWithIt() throws IOException
+    {
+        update("(+ 1 2)\n(- 5\n  (/ 1 0))\n",
+            "p.in:1: 3\n\t  (/ 1 0))\n\t   ^\n",
+            "p.in:3:4: RuntimeError: Cannot divide by 0\n"
+            + "Ran 2 of 2 forms, 1 with errors, the first at p.in:3:4\n");
+
+        update("(* 2 2)\n\n(+ 1 2) (- 5\n  (/ 1 0))\n",
+            "p.in:1: 4\n",
+            "Ran 1 of 3 forms, 1 with errors, the first at p.in:4:4\n");
+    }
+
+    @Test
+    void unterminatedBlockCommentAtTheEndIsReported() throws IOException
+    {
+        update("(+ 1 2)\n/* open\n",
+            "p.in:1: 3\n\t/* open\n\t^\n",
+            "p.in:2:1: ParseError: Unterminated block comment\n"
+            + "Ran 2 of 2 forms, 1 with errors, the first at p.in:2:1\n");
+
+        update("(+ 1 2)\n/* open */\n",
+            "",
+            "Ran 0 of 1 forms, none with errors\n");
+    }
+
+    /*
+     * Writes the file, runs what has changed, and asserts what 
+     * was written to the console and to the error stream.
+     */
+    private void update(String source, String expectedConsole, String expectedErrors)
+        throws IOException
+    {
+        Files.writeString(file, source);
+        console.reset();
+        errors.reset();
+
+        watch.update(file);
+
+        assertEquals(expectedConsole, console.toString());
+        assertEquals(expectedErrors, errors.toString());
+    }
+}
@@ -0,0 +1,209 @@
+package me.mtk.magneticmoose;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// A Batch runs many source files in a single JVM, so that the
+// interpreter is started, and compiled by the JIT compiler, once
+// for all of them rather than once for each of them.
+//
+// The files are run in parallel on a work-stealing pool of threads,
+// each file in a Session of its own. The output of each file, that
+// is, its values and error messages exactly as the command line would
+// write them, is collected in memory and written in a section of its
+// own, in the order in which the files were given:
+//
+//     ==> program.in <==
+//     3
+//     program.in:2:2: RuntimeError: Cannot divide by 0
+//     ...
+//
+// Only a few files ahead of the one whose section is being written
+// are run at a time, so the output of at most those files is held
+// in memory.
+class Batch
+{
+    // The exit status of a file that could not be read.
+    private static final int UNREADABLE = 66;
+
+    // The exit status of a file whose run failed with an exception
+    // other than an InterpreterError, which is that of an internal
+    // software error, as for a RuntimeError.
+    private static final int FAILED = 70;
+
+    // The exit statuses, from the one that takes precedence over
+    // all others to the one that takes precedence over none but 0.
+    private static final int[] PRECEDENCE = { 65, FAILED, UNREADABLE };
+
+    private final Interpreter interpreter;
+    private final Engine engine;
+    private final ForkJoinPool pool;
+
+    // The output and exit status of a file.
+    private static class Result
+    {
+        private final byte[] output;
+        private final int status;
+
+        private Result(byte[] output, int status)
+        {
+            this.output = output;
+            this.status = status;
+        }
+    }
+
+    /**
+     * Constructs a new Batch.
+     *
+     * @param interpreter The Interpreter that runs every file.
+     * @param engine The engine that evaluates every file.
+     * @param pool The pool of threads on which the files are run.
+     */
+    Batch(Interpreter interpreter, Engine engine, ForkJoinPool pool)
+    {
+        this.interpreter = interpreter;
+        this.engine = engine;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the files to run. Each argument is either a file, a
+     * directory, whose regular files (and those of its subdirectories)
+     * are run in the order of their paths, or "@" followed by the path
+     * of a list of files and directories, one on each line.
+     *
+     * @param args The arguments.
+     * @return The paths of the files.
+     * @throws IOException If a directory or a list cannot be read.
+     */
+    static List<Path> files(List<String> args) throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+
+        for (String arg : args)
+        {
+            if (arg.startsWith("@"))
+            {
+                List<String> lines = Files.readAllLines(Path.of(arg.substring(1)))
+                    .stream()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty())
+                    .collect(Collectors.toList());
+
+                for (String line : lines)
+                    add(files, Path.of(line));
+            }
+            else
+                add(files, Path.of(arg));
+        }
+
+        return files;
+    }
+
+    /*
+     * Adds a file, or the regular files of a directory, to a list
+     * of files.
+     */
+    private static void add(List<Path> files, Path path) throws IOException
+    {
+        if (!Files.isDirectory(path))
+        {
+            files.add(path);
+            return;
+        }
+
+        try (Stream<Path> walk = Files.walk(path))
+        {
+            walk.filter(Files::isRegularFile).sorted().forEach(files::add);
+        }
+    }
+
+    /**
+     * Runs the files and writes their sections of output.
+     *
+     * @param files The paths of the files.
+     * @param out The stream to which the sections are written.
+     * @return The status with which to exit: 65 if a file had a
+     * ParseError, or else 70 if a file had a RuntimeError or failed
+     * otherwise, or else 66 if a file could not be read, or else 0.
+     * @throws IOException If the sections cannot be written.
+     */
+    int run(List<Path> files, OutputStream out) throws IOException
+    {
+        Deque<ForkJoinTask<Result>> tasks = new ArrayDeque<>();
+        boolean[] statuses = new boolean[PRECEDENCE.length];
+        int next = 0;
+
+        for (Path file : files)
+        {
+            while (next < files.size() && tasks.size() < 2 * pool.getParallelism())
+            {
+                Path path = files.get(next++);
+                tasks.add(pool.submit(() -> run(path)));
+            }
+
+            Result result = tasks.poll().join();
+
+            out.write(("==> " + file + " <==\n").getBytes(ByteSequence.CHARSET));
+            out.write(result.output);
+
+            for (int i = 0; i < PRECEDENCE.length; i++)
+                if (result.status == PRECEDENCE[i]) statuses[i] = true;
+        }
+
+        out.flush();
+
+        for (int i = 0; i < PRECEDENCE.length; i++)
+            if (statuses[i]) return PRECEDENCE[i];
+
+        return 0;
+    }
+
+    /*
+     * Runs a file in a Session of its own. An exception that the
+     * Session does not report, such as one from a bug, is written
+     * to the section of the file, so that it does not abort the
+     * files after it.
+     *
+     * @param file The path of the file.
+     * @return The output and exit status of the file.
+     */
+    private Result run(Path file)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, ByteSequence.CHARSET);
+
+        try
+        {
+            Session session = new Session(interpreter, null, output, stream, stream);
+            session.cache = MagneticMoose.cache;
+            session.intern = MagneticMoose.intern;
+            session.engine = engine;
+            session.filename = file.toString();
+            session.run(MagneticMoose.read(file.toString()));
+            return new Result(output.toByteArray(), session.exitCode());
+        }
+        catch (IOException err)
+        {
+            stream.print("Could not read " + file + ": " + err + "\n");
+            return new Result(output.toByteArray(), UNREADABLE);
+        }
+        catch (RuntimeException err)
+        {
+            stream.print("Could not run " + file + ": " + err + "\n");
+            return new Result(output.toByteArray(), FAILED);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package me.mtk.magneticmoose;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+// A ByteSequence is a read-only view of a ByteBuffer (typically
+// a MappedByteBuffer of a source file) as a sequence of characters.
+// Because the language is ASCII-only, each byte is treated as one
+// character, so the Lexer can scan a file without first decoding
+// it into a String.
+//
+// The text that is shown to the user, such as the line of an error,
+// is nevertheless decoded with the charset of the platform, as a
+// file read into a String would be. When that charset is UTF-8, the
+// continuation bytes of a character are not counted as columns (see
+// columns), so that a column counts the characters before it.
+class ByteSequence implements CharSequence
+{
+    // The charset in which source files are written.
+    static final Charset CHARSET = Charset.defaultCharset();
+
+    // Indicates whether a character may be encoded in several
+    // bytes, of which all but the first are continuation bytes.
+    static final boolean IS_UTF_8 = CHARSET.equals(StandardCharsets.UTF_8);
+
+    // The bytes of the source program.
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructs a new ByteSequence that views the bytes
+     * of the provided buffer between its position and its limit.
+     *
+     * @param buffer A buffer of bytes.
+     */
+    public ByteSequence(ByteBuffer buffer)
+    {
+        this.buffer = buffer.slice();
+    }
+
+    @Override
+    public int length()
+    {
+        return buffer.limit();
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        return (char) (buffer.get(index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return new ByteSequence(buffer.slice(start, end - start));
+    }
+
+    @Override
+    public String toString()
+    {
+        byte[] bytes = new byte[buffer.limit()];
+        buffer.get(0, bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Indicates whether a byte of a source file continues a
+     * character that began at an earlier byte.
+     *
+     * @param b A byte (or character) of a ByteSequence.
+     * @return True if the byte is a continuation byte of UTF-8
+     * and source files are in UTF-8; False otherwise.
+     */
+    static boolean isContinuationByte(int b)
+    {
+        return IS_UTF_8 && (b & 0xC0) == 0x80;
+    }
+
+    /**
+     * Returns the amount of characters in the range [start, end)
+     * of a source program.
+     *
+     * @param source A source program, either a String or
+     * a ByteSequence.
+     * @param start The index of the first character.
+     * @param end One past the index of the last character.
+     * @return The amount of characters.
+     */
+    static int columns(CharSequence source, int start, int end)
+    {
+        int columns = end - start;
+
+        if (IS_UTF_8 && source instanceof ByteSequence)
+        {
+            for (int i = start; i < end; i++)
+                if (isContinuationByte(source.charAt(i))) columns--;
+        }
+
+        return columns;
+    }
+
+    /**
+     * Returns the amount of characters in the range [start, end)
+     * of the bytes of a source file.
+     *
+     * @param bytes The bytes of a source file.
+     * @param start The index of the first byte.
+     * @param end One past the index of the last byte.
+     * @return The amount of characters.
+     */
+    static int columns(byte[] bytes, int start, int end)
+    {
+        int columns = end - start;
+
+        for (int i = start; i < end; i++)
+            if (isContinuationByte(bytes[i])) columns--;
+
+        return columns;
+    }
+}
\ No newline at end of file
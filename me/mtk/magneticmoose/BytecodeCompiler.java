@@ -0,0 +1,771 @@
+package me.mtk.magneticmoose;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The BytecodeCompiler is a backend that compiles an expression
+// into JVM bytecode. Each expression becomes a hidden class whose
+// code is the straight-line arithmetic of the expression, so the
+// JIT compiler can optimize it as it would any Java method. The
+// hidden class is a Node, so it is evaluated like any other
+// compiled expression (see Compiler).
+//
+// A large expression is split across several methods of the
+// hidden class. Each method is kept under HotSpot's 8000 byte
+// limit for JIT compilation, which is well under the 64 KB limit
+// of the class file format.
+public class BytecodeCompiler
+{
+    // The maximum size, in bytes, of the code of a generated method.
+    private static final int MAX_METHOD_SIZE = 7900;
+
+    // The maximum depth, in slots, of the operand stack of a
+    // generated method.
+    private static final int MAX_STACK_SIZE = 512;
+
+    // The maximum amount of entries in a constant pool.
+    private static final int MAX_CONSTANT_POOL_SIZE = 65535;
+
+    // The size, in bytes, of a call to a generated method.
+    private static final int CALL_SIZE = 4;
+
+    // Internal names and descriptors of the generated classes.
+    private static final String CLASS_NAME = "me/mtk/magneticmoose/CompiledExpr";
+    private static final String NODE = "me/mtk/magneticmoose/Node";
+    private static final String SELF = "me/mtk/magneticmoose/BytecodeCompiler";
+    private static final String TOKENS = "[Lme/mtk/magneticmoose/Token;";
+    private static final String METHOD_DESCRIPTOR = "(" + TOKENS + ")D";
+    private static final String DIVIDE_DESCRIPTOR = "(DDLme/mtk/magneticmoose/Token;)D";
+
+    // Opcodes of the JVM instructions that are emitted.
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int AALOAD = 0x32;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DNEG = 0x77;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    // Access flags of the generated class and its members.
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // Used to define the hidden classes in this package.
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /**
+     * Compiles the given expression into a hidden class. If the
+     * expression is too large to fit in a single class, it is
+     * compiled by the Compiler instead.
+     *
+     * @param expr An expression to compile.
+     * @return A Node that evaluates to the value of the expression.
+     */
+    public Node compile(Expr expr)
+    {
+        byte[] bytes;
+        Token[] sites;
+
+        try
+        {
+            Assembler assembler = new Assembler();
+            bytes = assembler.assemble(expr);
+            sites = assembler.sites.toArray(new Token[0]);
+        }
+        catch (ClassTooLargeException err)
+        {
+            return new Compiler().compile(expr);
+        }
+
+        try
+        {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true);
+            return (Node) hidden.findConstructor(hidden.lookupClass(),
+                MethodType.methodType(void.class, Token[].class)).invoke(sites);
+        }
+        catch (Throwable err)
+        {
+            throw new IllegalStateException("Failed to load compiled expression", err);
+        }
+    }
+
+    /**
+     * Divides two numbers on behalf of a generated method.
+     *
+     * @param dividend The dividend.
+     * @param divisor The divisor.
+     * @param operator The operator of the division, for error reporting.
+     * @return The quotient.
+     * @throws RuntimeError if the divisor is 0.
+     */
+    static double divide(double dividend, double divisor, Token operator)
+    {
+        if (divisor == 0)
+            throw new RuntimeError(operator, "Cannot divide by 0");
+
+        return dividend / divisor;
+    }
+
+    // Thrown when an expression needs more constant pool entries
+    // than a single class file can hold.
+    private static class ClassTooLargeException extends RuntimeException
+    {
+    }
+
+    // Assembles the class file of a single expression. The expression
+    // is first measured to decide which of its subexpressions must be
+    // split into methods of their own, and is then emitted method by
+    // method. Each generated method takes the array of division
+    // operator tokens (sites) as its only argument.
+    private static class Assembler
+    {
+        private final ConstantPool pool = new ConstantPool();
+
+        // The tokens of the division operators, in the order in which
+        // they are emitted. A generated method loads the token of a
+        // division from this array only if it divides by zero.
+        private final List<Token> sites = new ArrayList<>();
+
+        // The subexpressions that are split into methods of their own,
+        // mapped to the operand stack depth of that method.
+        private final Map<Expr, Integer> outlined = new IdentityHashMap<>();
+
+        // The indices of the generated methods of the subexpressions.
+        private final Map<Expr, Integer> methodIndices = new IdentityHashMap<>();
+
+        // The subexpressions whose methods are yet to be emitted.
+        private final Deque<Expr> pending = new ArrayDeque<>();
+
+        // The emitted methods.
+        private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        private int methodCount = 0;
+
+        /*
+         * Assembles the class file of the given expression.
+         *
+         * @param expr An expression.
+         * @return The bytes of the class file.
+         */
+        private byte[] assemble(Expr expr)
+        {
+            int rootStack = stack(measure(expr));
+
+            methodIndex(expr);
+            writeConstructor();
+            writeGetAsDouble();
+            writeMethod(expr, rootStack);
+
+            while (!pending.isEmpty())
+            {
+                Expr method = pending.poll();
+                writeMethod(method, outlined.get(method));
+            }
+
+            int thisClass = pool.classRef(CLASS_NAME);
+            int superClass = pool.classRef(NODE);
+            int sitesField = pool.utf8("sites");
+            int sitesDescriptor = pool.utf8(TOKENS);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            try
+            {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(61);
+                pool.writeTo(out);
+                out.writeShort(ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0);
+
+                // private final Token[] sites;
+                out.writeShort(1);
+                out.writeShort(ACC_PRIVATE | ACC_FINAL);
+                out.writeShort(sitesField);
+                out.writeShort(sitesDescriptor);
+                out.writeShort(0);
+
+                out.writeShort(methodCount);
+                methods.writeTo(out);
+                out.writeShort(0);
+            }
+            catch (IOException err)
+            {
+                throw new UncheckedIOException(err);
+            }
+
+            return bytes.toByteArray();
+        }
+
+        /*
+         * Measures the code size and operand stack depth of the
+         * given expression, deciding which of its subexpressions
+         * are to be split into methods of their own. The expression
+         * is traversed in post-order with explicit stacks, so that
+         * its height is limited only by the size of the heap.
+         *
+         * @param root An expression.
+         * @return The code size (high 32 bits) and stack depth
+         * (low 32 bits) of the expression.
+         */
+        private long measure(Expr root)
+        {
+            // The expressions to be visited. An expression is pushed
+            // once to visit its operands and, if it has operands, once
+            // more (marked as expanded) to measure it from them.
+            Expr[] exprs = new Expr[64];
+            boolean[] expanded = new boolean[64];
+            int exprCount = 0;
+
+            // The measures of the expressions that have been measured.
+            long[] measures = new long[64];
+            int measureCount = 0;
+
+            exprs[exprCount++] = root;
+
+            while (exprCount > 0)
+            {
+                Expr expr = exprs[--exprCount];
+                boolean isExpanded = expanded[exprCount];
+
+                if (exprCount + 3 > exprs.length)
+                {
+                    exprs = Arrays.copyOf(exprs, exprs.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+
+                if (measureCount + 1 > measures.length)
+                    measures = Arrays.copyOf(measures, measures.length * 2);
+
+                int size;
+                int stack;
+
+                if (expr instanceof Expr.Number)
+                {
+                    size = isSmallConstant(((Expr.Number) expr).value) ? 1 : 3;
+                    stack = 2;
+                }
+                else if (!isExpanded)
+                {
+                    exprs[exprCount] = expr;
+                    expanded[exprCount++] = true;
+
+                    // Push the second operand before the first, so
+                    // that the first operand is measured first.
+                    if (expr instanceof Expr.Unary)
+                    {
+                        exprs[exprCount] = ((Expr.Unary) expr).right;
+                        expanded[exprCount++] = false;
+                    }
+                    else
+                    {
+                        exprs[exprCount] = ((Expr.Binary) expr).second;
+                        expanded[exprCount++] = false;
+                        exprs[exprCount] = ((Expr.Binary) expr).first;
+                        expanded[exprCount++] = false;
+                    }
+
+                    continue;
+                }
+                else if (expr instanceof Expr.Unary)
+                {
+                    Expr.Unary unary = (Expr.Unary) expr;
+                    long right = measureOperand(unary.right, 
+                        measures[--measureCount]);
+
+                    size = size(right);
+                    stack = stack(right);
+
+                    if (unary.operator.type == TokenType.MINUS) size++;
+                }
+                else
+                {
+                    Expr.Binary binary = (Expr.Binary) expr;
+                    long second = measureOperand(binary.second, 
+                        measures[--measureCount]);
+                    long first = measureOperand(binary.first, 
+                        measures[--measureCount]);
+
+                    size = size(first) + size(second) + 1;
+                    stack = Math.max(stack(first), 2 + stack(second));
+
+                    if (binary.operator.type == TokenType.SLASH)
+                    {
+                        // aload_0, push the site index (at most 3 bytes),
+                        // aaload, and invokestatic in place of an opcode.
+                        size += 1 + 3 + 1 + 2;
+
+                        // Both operands, the sites array, and the index.
+                        stack = Math.max(stack, 6);
+                    }
+                }
+
+                measures[measureCount++] = ((long) size << 32) | stack;
+            }
+
+            return measures[0];
+        }
+
+        /*
+         * Measures an operand of an expression. If the operand is
+         * too large to be emitted inline, it is split into a method
+         * of its own and measured as a call to that method.
+         *
+         * @param expr An operand.
+         * @param measure The code size and stack depth of the operand
+         * itself.
+         * @return The code size and stack depth of the operand.
+         */
+        private long measureOperand(Expr expr, long measure)
+        {
+            if (size(measure) > MAX_METHOD_SIZE / 2
+                || stack(measure) > MAX_STACK_SIZE / 2)
+            {
+                outlined.put(expr, stack(measure));
+                return ((long) CALL_SIZE << 32) | 2;
+            }
+
+            return measure;
+        }
+
+        private static int size(long measure)
+        {
+            return (int) (measure >>> 32);
+        }
+
+        private static int stack(long measure)
+        {
+            return (int) measure;
+        }
+
+        /*
+         * Emits the code of the method of an expression. Its operands
+         * are emitted inline, save those that have methods of their
+         * own, which are called instead. Like measure, this traverses
+         * the expression in post-order with an explicit stack.
+         *
+         * @param root An expression.
+         * @param code The code of the method being emitted.
+         */
+        private void emit(Expr root, ByteArrayOutputStream code)
+        {
+            // The expressions to be visited, as in measure.
+            Expr[] exprs = new Expr[64];
+            boolean[] expanded = new boolean[64];
+            int exprCount = 0;
+
+            exprs[exprCount++] = root;
+
+            while (exprCount > 0)
+            {
+                Expr expr = exprs[--exprCount];
+                boolean isExpanded = expanded[exprCount];
+
+                if (exprCount + 3 > exprs.length)
+                {
+                    exprs = Arrays.copyOf(exprs, exprs.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+
+                if (expr != root && outlined.containsKey(expr))
+                {
+                    code.write(ALOAD_0);
+                    code.write(INVOKESTATIC);
+                    writeShort(code, pool.methodRef(CLASS_NAME,
+                        "m" + methodIndex(expr), METHOD_DESCRIPTOR));
+                }
+                else if (expr instanceof Expr.Number)
+                {
+                    double value = ((Expr.Number) expr).value;
+
+                    if (Double.doubleToRawLongBits(value) == 0L)
+                        code.write(DCONST_0);
+                    else if (value == 1)
+                        code.write(DCONST_1);
+                    else
+                    {
+                        code.write(LDC2_W);
+                        writeShort(code, pool.doubleConstant(value));
+                    }
+                }
+                else if (!isExpanded)
+                {
+                    exprs[exprCount] = expr;
+                    expanded[exprCount++] = true;
+
+                    if (expr instanceof Expr.Unary)
+                    {
+                        exprs[exprCount] = ((Expr.Unary) expr).right;
+                        expanded[exprCount++] = false;
+                    }
+                    else
+                    {
+                        exprs[exprCount] = ((Expr.Binary) expr).second;
+                        expanded[exprCount++] = false;
+                        exprs[exprCount] = ((Expr.Binary) expr).first;
+                        expanded[exprCount++] = false;
+                    }
+                }
+                else if (expr instanceof Expr.Unary)
+                {
+                    if (((Expr.Unary) expr).operator.type == TokenType.MINUS)
+                        code.write(DNEG);
+                }
+                else
+                {
+                    Expr.Binary binary = (Expr.Binary) expr;
+
+                    switch (binary.operator.type)
+                    {
+                        case PLUS: code.write(DADD); break;
+                        case MINUS: code.write(DSUB); break;
+                        case STAR: code.write(DMUL); break;
+                        case SLASH:
+                            code.write(ALOAD_0);
+                            pushInt(sites.size(), code);
+                            code.write(AALOAD);
+                            code.write(INVOKESTATIC);
+                            writeShort(code, pool.methodRef(SELF, "divide",
+                                DIVIDE_DESCRIPTOR));
+                            sites.add(binary.operator);
+                            break;
+                        default:
+                            throw new RuntimeError(binary.operator,
+                                "Unknown binary operator");
+                    }
+                }
+            }
+        }
+
+        /*
+         * Returns the index of the method of the given expression,
+         * scheduling the method to be emitted if it has not been.
+         *
+         * @param expr An expression that has a method of its own.
+         * @return The index of the method.
+         */
+        private int methodIndex(Expr expr)
+        {
+            Integer index = methodIndices.get(expr);
+
+            if (index == null)
+            {
+                index = methodIndices.size();
+                methodIndices.put(expr, index);
+
+                // The root expression is emitted directly.
+                if (index != 0) pending.add(expr);
+            }
+
+            return index;
+        }
+
+        /*
+         * Pushes an int constant onto the operand stack.
+         *
+         * @param value The int.
+         * @param code The code of the method being emitted.
+         */
+        private void pushInt(int value, ByteArrayOutputStream code)
+        {
+            if (value <= 5)
+                code.write(ICONST_0 + value);
+            else if (value <= Byte.MAX_VALUE)
+            {
+                code.write(BIPUSH);
+                code.write(value);
+            }
+            else if (value <= Short.MAX_VALUE)
+            {
+                code.write(SIPUSH);
+                writeShort(code, value);
+            }
+            else
+            {
+                code.write(LDC_W);
+                writeShort(code, pool.integerConstant(value));
+            }
+        }
+
+        /*
+         * Writes the method of an expression:
+         * private static double m<i>(Token[] sites)
+         *
+         * @param expr The expression.
+         * @param maxStack The operand stack depth of the method.
+         */
+        private void writeMethod(Expr expr, int maxStack)
+        {
+            ByteArrayOutputStream code = new ByteArrayOutputStream();
+            emit(expr, code);
+            code.write(DRETURN);
+
+            writeMethod(ACC_PRIVATE | ACC_STATIC, "m" + methodIndex(expr),
+                METHOD_DESCRIPTOR, maxStack, 1, code.toByteArray());
+        }
+
+        /*
+         * Writes the constructor:
+         * CompiledExpr(Token[] sites) { this.sites = sites; }
+         */
+        private void writeConstructor()
+        {
+            ByteArrayOutputStream code = new ByteArrayOutputStream();
+            code.write(ALOAD_0);
+            code.write(INVOKESPECIAL);
+            writeShort(code, pool.methodRef(NODE, "<init>", "()V"));
+            code.write(ALOAD_0);
+            code.write(ALOAD_1);
+            code.write(PUTFIELD);
+            writeShort(code, pool.fieldRef(CLASS_NAME, "sites", TOKENS));
+            code.write(RETURN);
+
+            writeMethod(ACC_PUBLIC, "<init>", "(" + TOKENS + ")V", 2, 2,
+                code.toByteArray());
+        }
+
+        /*
+         * Writes the method that evaluates the expression:
+         * public double getAsDouble() { return m0(sites); }
+         */
+        private void writeGetAsDouble()
+        {
+            ByteArrayOutputStream code = new ByteArrayOutputStream();
+            code.write(ALOAD_0);
+            code.write(GETFIELD);
+            writeShort(code, pool.fieldRef(CLASS_NAME, "sites", TOKENS));
+            code.write(INVOKESTATIC);
+            writeShort(code, pool.methodRef(CLASS_NAME, "m0", METHOD_DESCRIPTOR));
+            code.write(DRETURN);
+
+            writeMethod(ACC_PUBLIC, "getAsDouble", "()D", 2, 1,
+                code.toByteArray());
+        }
+
+        /*
+         * Writes a method_info structure with a Code attribute.
+         */
+        private void writeMethod(int access, String name, String descriptor,
+            int maxStack, int maxLocals, byte[] code)
+        {
+            writeShort(methods, access);
+            writeShort(methods, pool.utf8(name));
+            writeShort(methods, pool.utf8(descriptor));
+            writeShort(methods, 1);
+
+            // The Code attribute
+            writeShort(methods, pool.utf8("Code"));
+            writeInt(methods, 12 + code.length);
+            writeShort(methods, maxStack);
+            writeShort(methods, maxLocals);
+            writeInt(methods, code.length);
+            methods.writeBytes(code);
+            writeShort(methods, 0);
+            writeShort(methods, 0);
+
+            methodCount++;
+        }
+
+        private static boolean isSmallConstant(double value)
+        {
+            return Double.doubleToRawLongBits(value) == 0L || value == 1;
+        }
+
+        private static void writeShort(ByteArrayOutputStream out, int value)
+        {
+            out.write(value >>> 8);
+            out.write(value);
+        }
+
+        private static void writeInt(ByteArrayOutputStream out, int value)
+        {
+            writeShort(out, value >>> 16);
+            writeShort(out, value);
+        }
+    }
+
+    // The constant pool of a class file. Each constant is
+    // added to the pool at most once.
+    private static class ConstantPool
+    {
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_DOUBLE = 6;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_FIELDREF = 9;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        // The indices of the constants in the pool.
+        private final Map<List<Object>, Integer> indices = new HashMap<>();
+
+        // The index of the next constant. Index 0 is unused.
+        private int nextIndex = 1;
+
+        private int utf8(String value)
+        {
+            Integer index = indices.get(Arrays.asList(CONSTANT_UTF8, value));
+            if (index != null) return index;
+
+            try
+            {
+                int newIndex = add(1, CONSTANT_UTF8, value);
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+                return newIndex;
+            }
+            catch (IOException err)
+            {
+                throw new UncheckedIOException(err);
+            }
+        }
+
+        private int integerConstant(int value)
+        {
+            Integer index = indices.get(Arrays.asList(CONSTANT_INTEGER, value));
+            if (index != null) return index;
+
+            int newIndex = add(1, CONSTANT_INTEGER, value);
+            write(CONSTANT_INTEGER, value >>> 16, value & 0xFFFF);
+            return newIndex;
+        }
+
+        private int doubleConstant(double value)
+        {
+            long bits = Double.doubleToRawLongBits(value);
+            Integer index = indices.get(Arrays.asList(CONSTANT_DOUBLE, bits));
+            if (index != null) return index;
+
+            // A double takes up two entries of the pool.
+            int newIndex = add(2, CONSTANT_DOUBLE, bits);
+            write(CONSTANT_DOUBLE, (int) (bits >>> 48) & 0xFFFF,
+                (int) (bits >>> 32) & 0xFFFF, (int) (bits >>> 16) & 0xFFFF,
+                (int) bits & 0xFFFF);
+            return newIndex;
+        }
+
+        private int classRef(String name)
+        {
+            int nameIndex = utf8(name);
+            Integer index = indices.get(Arrays.asList(CONSTANT_CLASS, name));
+            if (index != null) return index;
+
+            int newIndex = add(1, CONSTANT_CLASS, name);
+            write(CONSTANT_CLASS, nameIndex);
+            return newIndex;
+        }
+
+        private int fieldRef(String owner, String name, String descriptor)
+        {
+            return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+        }
+
+        private int methodRef(String owner, String name, String descriptor)
+        {
+            return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name,
+            String descriptor)
+        {
+            List<Object> key = Arrays.asList(tag, owner, name, descriptor);
+            Integer index = indices.get(key);
+            if (index != null) return index;
+
+            int classIndex = classRef(owner);
+            int nameAndTypeIndex = nameAndType(name, descriptor);
+            int newIndex = add(1, key);
+            write(tag, classIndex, nameAndTypeIndex);
+            return newIndex;
+        }
+
+        private int nameAndType(String name, String descriptor)
+        {
+            List<Object> key = Arrays.asList(CONSTANT_NAME_AND_TYPE, name,
+                descriptor);
+            Integer index = indices.get(key);
+            if (index != null) return index;
+
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int newIndex = add(1, key);
+            write(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+            return newIndex;
+        }
+
+        /*
+         * Reserves the given amount of entries for a constant.
+         *
+         * @return The index of the constant.
+         * @throws ClassTooLargeException if the pool is full.
+         */
+        private int add(int entries, Object... key)
+        {
+            return add(entries, Arrays.asList(key));
+        }
+
+        private int add(int entries, List<Object> key)
+        {
+            if (nextIndex + entries > MAX_CONSTANT_POOL_SIZE)
+                throw new ClassTooLargeException();
+
+            int index = nextIndex;
+            indices.put(key, index);
+            nextIndex += entries;
+            return index;
+        }
+
+        /*
+         * Writes a constant with the given tag followed by
+         * the given two byte values.
+         */
+        private void write(int tag, int... shorts)
+        {
+            bytes.write(tag);
+            for (int value : shorts)
+            {
+                bytes.write(value >>> 8);
+                bytes.write(value);
+            }
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException
+        {
+            out.writeShort(nextIndex);
+            bytes.writeTo(out);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package me.mtk.magneticmoose;
+
+// A Chunk is the compact, postfix encoding of a single expression
+// that is executed by the VirtualMachine (see ChunkCompiler). It 
+// consists of three flat arrays instead of a tree of objects:
+//
+//  - code, the opcodes of the expression in postfix order.
+//  - constants, the numbers of the expression. Each OP_CONSTANT
+//    instruction pushes the next constant, so constants are stored
+//    in the order in which they are pushed and opcodes need no
+//    operands.
+//  - positions, the line and column of each division operator,
+//    in the order in which the OP_DIVIDE instructions appear. These
+//    are used only to report a division by zero.
+class Chunk
+{
+    // Pushes the next constant onto the stack.
+    static final byte OP_CONSTANT = 0;
+
+    // Negates the value on top of the stack.
+    static final byte OP_NEGATE = 1;
+
+    // Pop the top two values of the stack and
+    // push the result of the operation.
+    static final byte OP_ADD = 2;
+    static final byte OP_SUBTRACT = 3;
+    static final byte OP_MULTIPLY = 4;
+    static final byte OP_DIVIDE = 5;
+
+    final byte[] code;
+    final double[] constants;
+    final int[] positions;
+
+    // The maximum depth of the stack while the Chunk is executed.
+    final int maxStack;
+
+    public Chunk(byte[] code, double[] constants, int[] positions, int maxStack)
+    {
+        this.code = code;
+        this.constants = constants;
+        this.positions = positions;
+        this.maxStack = maxStack;
+    }
+}
\ No newline at end of file
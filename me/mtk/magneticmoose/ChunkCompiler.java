@@ -0,0 +1,218 @@
+package me.mtk.magneticmoose;
+
+import java.util.Arrays;
+
+// The ChunkCompiler compiles an expression into a Chunk, a flat
+// postfix encoding of the expression that is executed by the
+// VirtualMachine. The abstract syntax tree (AST) of the expression
+// may be discarded once it has been compiled.
+//
+// The expression is traversed in post-order with an explicit stack
+// rather than recursively, so that its height is limited only by the
+// size of the heap. Each visit method emits only the instruction of
+// its own node, once the instructions of its operands have been.
+//
+// A Chunk may also be built without an AST, by emitting the
+// instructions of an expression in postfix order between begin and
+// end, as the Parser does while it parses (see Parser.nextChunk).
+public class ChunkCompiler implements Expr.Visitor<Void>
+{
+    // The Chunk under construction, as growable arrays.
+    private byte[] code;
+    private int codeSize;
+    private double[] constants;
+    private int constantCount;
+    private int[] positions;
+    private int positionCount;
+
+    // The current and maximum depth of the stack.
+    private int stackSize;
+    private int maxStack;
+
+    /**
+     * Compiles the given expression.
+     * 
+     * @param expr An expression to compile.
+     * @return A Chunk that evaluates to the value of the expression.
+     */
+    public Chunk compile(Expr expr)
+    {
+        begin();
+
+        // The expressions to be visited. An expression is pushed
+        // once to visit its operands and, if it has operands, once
+        // more (marked as expanded) to emit its own instruction.
+        Expr[] exprs = new Expr[64];
+        boolean[] expanded = new boolean[64];
+        int exprCount = 0;
+
+        exprs[exprCount++] = expr;
+
+        while (exprCount > 0)
+        {
+            Expr next = exprs[--exprCount];
+
+            if (exprCount + 3 > exprs.length)
+            {
+                exprs = Arrays.copyOf(exprs, exprs.length * 2);
+                expanded = Arrays.copyOf(expanded, expanded.length * 2);
+            }
+
+            if (expanded[exprCount] || next instanceof Expr.Number)
+                next.accept(this);
+            else if (next instanceof Expr.Unary)
+            {
+                exprs[exprCount] = next;
+                expanded[exprCount++] = true;
+                exprs[exprCount] = ((Expr.Unary) next).right;
+                expanded[exprCount++] = false;
+            }
+            else
+            {
+                // Push the second operand before the first, so
+                // that the first operand is emitted first.
+                exprs[exprCount] = next;
+                expanded[exprCount++] = true;
+                exprs[exprCount] = ((Expr.Binary) next).second;
+                expanded[exprCount++] = false;
+                exprs[exprCount] = ((Expr.Binary) next).first;
+                expanded[exprCount++] = false;
+            }
+        }
+
+        return end();
+    }
+
+    /**
+     * Begins a new Chunk, discarding the one under
+     * construction, if any.
+     */
+    public void begin()
+    {
+        code = new byte[16];
+        codeSize = 0;
+        constants = new double[8];
+        constantCount = 0;
+        positions = new int[0];
+        positionCount = 0;
+        stackSize = 0;
+        maxStack = 0;
+    }
+
+    /**
+     * Returns the Chunk of the instructions that have 
+     * been emitted since begin.
+     * 
+     * @return The Chunk.
+     */
+    public Chunk end()
+    {
+        return new Chunk(Arrays.copyOf(code, codeSize), 
+            Arrays.copyOf(constants, constantCount),
+            Arrays.copyOf(positions, positionCount), maxStack);
+    }
+
+    /**
+     * Emits the instruction that pushes a number.
+     * 
+     * @param value The number.
+     */
+    public void constant(double value)
+    {
+        emit(Chunk.OP_CONSTANT);
+
+        if (constantCount == constants.length)
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        constants[constantCount++] = value;
+
+        if (++stackSize > maxStack) maxStack = stackSize;
+    }
+
+    /**
+     * Emits the instruction that negates the value on
+     * top of the stack.
+     */
+    public void negate()
+    {
+        emit(Chunk.OP_NEGATE);
+    }
+
+    /**
+     * Emits the instruction of a binary operator, which applies
+     * it to the two values on top of the stack.
+     * 
+     * @param type The type of the operator.
+     * @param line The line of the operator.
+     * @param column The column of the operator.
+     */
+    public void operator(TokenType type, int line, int column)
+    {
+        switch (type)
+        {
+            case PLUS: emit(Chunk.OP_ADD); break;
+            case MINUS: emit(Chunk.OP_SUBTRACT); break;
+            case STAR: emit(Chunk.OP_MULTIPLY); break;
+            case SLASH:
+                emit(Chunk.OP_DIVIDE);
+                addPosition(line, column);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown binary operator " + type);
+        }
+
+        // Two values are popped and one is pushed.
+        stackSize--;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr)
+    {
+        operator(expr.operator.type, expr.operator.line, expr.operator.column);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr)
+    {
+        // The unary plus operator does nothing, so
+        // it is compiled away.
+        if (expr.operator.type == TokenType.MINUS)
+            negate();
+
+        return null;
+    }
+
+    @Override
+    public Void visitNumberExpr(Expr.Number expr)
+    {
+        constant(expr.value);
+        return null;
+    }
+
+    /*
+     * Appends an opcode to the code of the Chunk.
+     * 
+     * @param opcode An opcode.
+     */
+    private void emit(byte opcode)
+    {
+        if (codeSize == code.length)
+            code = Arrays.copyOf(code, codeSize * 2);
+        code[codeSize++] = opcode;
+    }
+
+    /*
+     * Appends the position of a division operator
+     * to the positions of the Chunk.
+     * 
+     * @param line The line of the operator.
+     * @param column The column of the operator.
+     */
+    private void addPosition(int line, int column)
+    {
+        if (positionCount == positions.length)
+            positions = Arrays.copyOf(positions, Math.max(2, positionCount * 2));
+        positions[positionCount++] = line;
+        positions[positionCount++] = column;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,262 @@
+package me.mtk.magneticmoose;
+
+import java.util.Arrays;
+
+// The Compiler turns an abstract syntax tree (AST) into a
+// tree of Node objects, each of which is specialized for a
+// single operator. The AST is walked only once, when it is
+// compiled; the resulting Node may then be evaluated
+// repeatedly without walking the AST again, which is useful
+// when the same program is evaluated many times.
+//
+// The operands of an operator that the Parser has folded, such
+// as those of (+ a b c ...), are compiled into a single Node that
+// loops over them rather than into a chain of binary Nodes, so 
+// that neither compiling nor evaluating a wide expression recurses
+// once per operand.
+//
+// A Node is evaluated recursively, so a tall expression is compiled
+// with explicit stacks instead, and into a Node that is not as tall:
+// a Node that would still be too deep is replaced by one that 
+// evaluates its expression with the Interpreter.
+public class Compiler implements Expr.Visitor<Node>
+{
+    // The height of the tallest expression that is compiled
+    // recursively, and the depth of the deepest Node that is
+    // evaluated recursively.
+    private static final int MAX_RECURSION_DEPTH = 1000;
+
+    // Evaluates the Nodes that would be too deep.
+    private final Interpreter interpreter = new Interpreter();
+
+    /**
+     * Compiles the given expression.
+     * 
+     * @param expr An expression to compile.
+     * @return A Node that evaluates to the value of the expression.
+     */
+    public Node compile(Expr expr)
+    {
+        if (expr.height <= MAX_RECURSION_DEPTH)
+            return expr.accept(this);
+
+        return compileIteratively(expr);
+    }
+
+    @Override
+    public Node visitBinaryExpr(Expr.Binary expr)
+    {
+        Expr[] operands = operands(expr);
+        Node[] nodes = new Node[operands.length];
+
+        for (int i = 0; i < operands.length; i++)
+            nodes[i] = compile(operands[i]);
+
+        return node(expr, nodes);
+    }
+
+    @Override
+    public Node visitUnaryExpr(Expr.Unary expr)
+    {
+        return unary(expr, compile(expr.right));
+    }
+
+    @Override
+    public Node visitNumberExpr(Expr.Number expr)
+    {
+        return new Node.Constant(expr.value);
+    }
+
+    /*
+     * Compiles the expression by traversing it in post-order with
+     * explicit stacks of expressions and Nodes instead of recursion.
+     * Subexpressions that are short enough are still compiled
+     * recursively.
+     * 
+     * @param root An expression.
+     * @return A Node that evaluates to the value of the expression.
+     */
+    private Node compileIteratively(Expr root)
+    {
+        // The expressions to be visited. An expression is pushed
+        // once to visit its operands and once more (marked as 
+        // expanded) to create its Node from theirs.
+        Expr[] exprs = new Expr[64];
+        boolean[] expanded = new boolean[64];
+        int exprCount = 0;
+
+        // The Nodes of the expressions that have been compiled,
+        // and the depth of each.
+        Node[] nodes = new Node[64];
+        int[] depths = new int[64];
+        int nodeCount = 0;
+
+        exprs[exprCount++] = root;
+
+        while (exprCount > 0)
+        {
+            Expr expr = exprs[--exprCount];
+            boolean isExpanded = expanded[exprCount];
+
+            if (nodeCount + 1 > nodes.length)
+            {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+
+            if (!isExpanded && expr.height <= MAX_RECURSION_DEPTH)
+            {
+                nodes[nodeCount] = expr.accept(this);
+                depths[nodeCount++] = expr.height;
+                continue;
+            }
+
+            Expr[] operands = expr instanceof Expr.Binary 
+                ? operands((Expr.Binary) expr)
+                : new Expr[] {((Expr.Unary) expr).right};
+
+            if (!isExpanded)
+            {
+                if (exprCount + operands.length + 1 > exprs.length)
+                {
+                    int length = Math.max(exprs.length * 2, 
+                        exprCount + operands.length + 1);
+                    exprs = Arrays.copyOf(exprs, length);
+                    expanded = Arrays.copyOf(expanded, length);
+                }
+
+                // Push the operands in reverse, so that the first
+                // operand is compiled first.
+                exprs[exprCount] = expr;
+                expanded[exprCount++] = true;
+
+                for (int i = operands.length - 1; i >= 0; i--)
+                {
+                    exprs[exprCount] = operands[i];
+                    expanded[exprCount++] = false;
+                }
+
+                continue;
+            }
+
+            nodeCount -= operands.length;
+            Node[] operandNodes = Arrays.copyOfRange(nodes, nodeCount, 
+                nodeCount + operands.length);
+            int depth = 0;
+
+            for (int i = nodeCount; i < nodeCount + operands.length; i++)
+                depth = Math.max(depth, depths[i]);
+
+            Node node = expr instanceof Expr.Binary
+                ? node((Expr.Binary) expr, operandNodes)
+                : unary((Expr.Unary) expr, operandNodes[0]);
+
+            // The unary plus operator is compiled away.
+            if (node != operandNodes[0]) depth++;
+
+            if (depth > MAX_RECURSION_DEPTH)
+            {
+                node = new Node.Interpreted(expr, interpreter);
+                depth = 1;
+            }
+
+            nodes[nodeCount] = node;
+            depths[nodeCount++] = depth;
+        }
+
+        return nodes[0];
+    }
+
+    /*
+     * Returns the operands of a binary expression. The Parser folds
+     * the operands of (+ a b c) into (+ (+ a b) c), where every binary
+     * expression shares the same operator token, so the operands are 
+     * found by descending the first operands for as long as they 
+     * share that token.
+     * 
+     * @param expr A binary expression.
+     * @return The operands, in the order of the source program.
+     */
+    private static Expr[] operands(Expr.Binary expr)
+    {
+        int count = 1;
+        Expr first = expr;
+        while (first instanceof Expr.Binary 
+            && ((Expr.Binary) first).operator == expr.operator)
+        {
+            first = ((Expr.Binary) first).first;
+            count++;
+        }
+
+        Expr[] operands = new Expr[count];
+        operands[0] = first;
+
+        Expr binary = expr;
+        for (int i = count - 1; i > 0; i--)
+        {
+            operands[i] = ((Expr.Binary) binary).second;
+            binary = ((Expr.Binary) binary).first;
+        }
+
+        return operands;
+    }
+
+    /*
+     * Creates the Node of a binary expression from the Nodes of
+     * its operands.
+     * 
+     * @param expr A binary expression.
+     * @param operands The Nodes of its operands (see operands).
+     * @return The Node of the expression.
+     */
+    private static Node node(Expr.Binary expr, Node[] operands)
+    {
+        if (operands.length == 2)
+        {
+            Node first = operands[0];
+            Node second = operands[1];
+
+            switch (expr.operator.type)
+            {
+                case PLUS:
+                    return new Node.Add(first, second);
+                case MINUS:
+                    return new Node.Sub(first, second);
+                case STAR:
+                    return new Node.Mul(first, second);
+                case SLASH:
+                    return new Node.Div(expr.operator, first, second);
+                default:
+                    throw new RuntimeError(expr.operator, "Unknown binary operator");
+            }
+        }
+
+        switch (expr.operator.type)
+        {
+            case PLUS:
+                return new Node.Sum(operands);
+            case MINUS:
+                return new Node.Difference(operands);
+            case STAR:
+                return new Node.Product(operands);
+            case SLASH:
+                return new Node.Quotient(expr.operator, operands);
+            default:
+                throw new RuntimeError(expr.operator, "Unknown binary operator");
+        }
+    }
+
+    /*
+     * Creates the Node of a unary expression from the Node of
+     * its operand.
+     */
+    private static Node unary(Expr.Unary expr, Node right)
+    {
+        if (expr.operator.type == TokenType.MINUS)
+            return new Node.Neg(right);
+
+        // The unary plus operator does nothing, so
+        // it is compiled away.
+        return right;
+    }
+}
@@ -0,0 +1,303 @@
+package me.mtk.magneticmoose;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+// The Daemon runs source programs on behalf of clients that connect
+// to it over a Unix domain socket or a TCP port of localhost, so that
+// the cost of starting a JVM, and of compiling the interpreter, is
+// paid once rather than for every program.
+//
+// A client sends a request and then shuts down its side of the
+// connection. The first line of the request is either
+//
+//     RUN [name]
+//
+// followed by the source program, whose errors are reported as if it
+// were a file with the given name, or
+//
+//     FILE path
+//
+// to run the file at path. The Daemon responds with the output of the
+// program, that is, its values and error messages exactly as the
+// command line would write them, followed by a line "exit N", where
+// N is the status with which the command line would have exited.
+//
+// Each connection is handled on a thread of its own with a Session of
+// its own, so programs that are run at the same time do not affect
+// one another. An exception that the Session does not report, such as
+// one from a bug, is written to the response, which still ends with
+// its "exit N" line.
+//
+// The Daemon does not check who its clients are: any process that can
+// connect to it may have it read any file that it may read itself,
+// and the error messages of the file echo its lines.
+class Daemon
+{
+    // The name of a program that is sent without a name.
+    private static final String DEFAULT_NAME = "<program>";
+
+    // The initial size of the buffer into which a request is read.
+    private static final int REQUEST_CAPACITY = 8 * 1024;
+
+    // The greatest size of a request in bytes, so that a client
+    // cannot have the Daemon run out of memory.
+    private static final int MAX_REQUEST_SIZE = 256 * 1024 * 1024;
+
+    // The exit status of a request that is malformed.
+    private static final int USAGE = 64;
+
+    // The exit status of a program whose run failed with an
+    // exception that the Session does not report.
+    private static final int FAILED = 70;
+
+    private final Interpreter interpreter;
+    private final Engine engine;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new Daemon.
+     *
+     * @param interpreter The Interpreter that runs every program.
+     * @param engine The engine that evaluates every program.
+     * @param pool The pool of threads on which to interpret top-level
+     * expressions in parallel, or null to interpret them one at a time.
+     */
+    Daemon(Interpreter interpreter, Engine engine, ForkJoinPool pool)
+    {
+        this.interpreter = interpreter;
+        this.engine = engine;
+        this.pool = pool;
+    }
+
+    /**
+     * Accepts connections until the process is terminated.
+     *
+     * @param address A port of localhost, if it is a number, or else
+     * the path of a Unix domain socket, which must not exist yet.
+     * @throws IOException If the address cannot be bound.
+     */
+    void serve(String address) throws IOException
+    {
+        ServerSocketChannel server;
+
+        if (address.matches("[0-9]+"))
+        {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                Integer.parseInt(address)));
+        }
+        else
+        {
+            Path path = Path.of(address);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(path));
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try
+                {
+                    Files.deleteIfExists(path);
+                }
+                catch (IOException err)
+                {
+                    // The socket file is left behind
+                }
+            }));
+        }
+
+        SocketAddress local = server.getLocalAddress();
+        System.err.println("Listening on " + local);
+
+        ExecutorService executor = connectionExecutor();
+
+        try (server)
+        {
+            while (true)
+            {
+                SocketChannel channel = server.accept();
+                executor.execute(() -> handle(channel));
+            }
+        }
+    }
+
+    /*
+     * Reads a request from a connection, runs its program,
+     * and responds with the output of the program.
+     *
+     * @param channel The connection.
+     */
+    private void handle(SocketChannel channel)
+    {
+        try (channel)
+        {
+            long start = System.nanoTime();
+            ByteBuffer request = read(channel);
+            if (request != null)
+                MagneticMoose.stats.read(request.limit(), System.nanoTime() - start);
+
+            // The values and the error messages are written to the
+            // same stream, in the order in which they are written.
+            OutputStream output = Channels.newOutputStream(channel);
+            PrintStream response = new PrintStream(output, true,
+                StandardCharsets.US_ASCII);
+            int status;
+
+            try
+            {
+                if (request == null)
+                {
+                    response.print("Expected a request of at most "
+                        + MAX_REQUEST_SIZE + " bytes\n");
+                    status = USAGE;
+                }
+                else
+                {
+                    Session session = new Session(interpreter, pool, output,
+                        response, response);
+                    session.cache = MagneticMoose.cache;
+                    session.intern = MagneticMoose.intern;
+                    session.engine = engine;
+                    status = run(request, session, response);
+                }
+            }
+            catch (UncheckedIOException err)
+            {
+                // The connection failed, so nothing more can be sent
+                throw err;
+            }
+            catch (RuntimeException | StackOverflowError err)
+            {
+                response.print("Could not run the program: " + err + "\n");
+                status = FAILED;
+            }
+
+            response.print("exit " + status + "\n");
+            response.flush();
+        }
+        catch (IOException | UncheckedIOException err)
+        {
+            System.err.println("Connection failed: " + err.getMessage());
+        }
+    }
+
+    /*
+     * Runs the program of a request.
+     *
+     * @param request The request.
+     * @param session The Session in which to run the program.
+     * @param response The stream to which to respond.
+     * @return The status with which the command line would have
+     * exited.
+     */
+    private int run(ByteBuffer request, Session session, PrintStream response)
+    {
+        int newline = 0;
+        while (newline < request.limit() && request.get(newline) != '\n')
+            newline++;
+
+        String header = StandardCharsets.US_ASCII.decode(
+            request.duplicate().limit(newline)).toString().strip();
+        request.position(Math.min(newline + 1, request.limit()));
+
+        if (header.equals("RUN") || header.startsWith("RUN "))
+        {
+            String name = header.substring(3).strip();
+            session.filename = name.isEmpty() ? DEFAULT_NAME : name;
+            session.run(request.slice());
+        }
+        else if (header.startsWith("FILE ") && !header.substring(5).isBlank())
+        {
+            String path = header.substring(5).strip();
+            ByteBuffer source;
+
+            try
+            {
+                source = MagneticMoose.read(path);
+            }
+            catch (IOException err)
+            {
+                response.print("Could not read " + path + ": " + err + "\n");
+                return 66;
+            }
+
+            session.filename = path;
+            session.run(source);
+        }
+        else
+        {
+            response.print("Expected \"RUN [name]\" or \"FILE path\" but got \""
+                + header + "\"\n");
+            return USAGE;
+        }
+
+        return session.exitCode();
+    }
+
+    /*
+     * Reads a request until the client shuts down its side
+     * of the connection.
+     *
+     * @param channel The connection.
+     * @return The request, from position 0 to its limit, or null
+     * if it is larger than MAX_REQUEST_SIZE.
+     */
+    private static ByteBuffer read(SocketChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(REQUEST_CAPACITY);
+
+        while (channel.read(buffer) >= 0)
+        {
+            if (!buffer.hasRemaining())
+            {
+                // A buffer one byte larger than the greatest request
+                // fills up only if the request is too large.
+                if (buffer.capacity() > MAX_REQUEST_SIZE) return null;
+
+                ByteBuffer larger = ByteBuffer.allocate(
+                    Math.min(2 * buffer.capacity(), MAX_REQUEST_SIZE + 1));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    /*
+     * Returns an executor that runs each connection on a virtual
+     * thread of its own on a JDK that has them (21 and later), or
+     * otherwise on a pooled platform thread.
+     *
+     * @return The executor.
+     */
+    private static ExecutorService connectionExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException err)
+        {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package me.mtk.magneticmoose;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+// The DoubleFormatter writes the value of an expression as ASCII
+// text straight into an array of bytes, in the same format as
+// Double.toString, except that an integer is written without the
+// trailing ".0" (see Interpreter.stringify).
+//
+// The digits of a double are the fewest decimal digits that round
+// to it, which are found with the Schubfach algorithm of Raffaello
+// Giulietti (the algorithm of Double.toString since JDK 19). Before
+// JDK 19, Double.toString occasionally wrote more digits than needed
+// (1.0E23 is written 9.999999999999999E22), but only for subnormal
+// doubles, for integers greater than 2^53, and for powers of two that
+// are not integers. So that the output of a program is the same on
+// every JDK, those doubles, along with infinities and NaN, are left
+// to Double.toString.
+final class DoubleFormatter
+{
+    // The greatest amount of bytes that format writes.
+    static final int MAX_LENGTH = 24;
+
+    // The precision (in bits) of a double.
+    private static final int P = 53;
+
+    // The exponent of the least significant bit of a subnormal double.
+    private static final int Q_MIN = -1074;
+
+    // The least significand of a normal double.
+    private static final long C_MIN = 1L << (P - 1);
+
+    // The biased exponent of infinities and NaN.
+    private static final int BQ_MASK = 0x7FF;
+
+    // The bits of the significand of a double.
+    private static final long T_MASK = C_MIN - 1;
+
+    // The greatest biased exponent of the doubles that are
+    // formatted without Double.toString, that of 2^52.
+    private static final int MAX_BQ = 1023 + P - 1;
+
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    // The powers of ten that fit in a long.
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static
+    {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+    }
+
+    // The 126-bit approximations g of the powers of ten 10^e for e in
+    // [MIN_EXPONENT, MAX_EXPONENT], scaled into [2^125, 2^126),
+    // stored as pairs of the high and the low 63 bits. Each of them
+    // is computed when it is first needed, as computing all of them
+    // takes longer than most programs take to run, and a program
+    // needs only a few of them (or none, if every value is an integer).
+    // A power is published through the final fields of a Power, so a
+    // thread that sees a Power sees both of its halves; two threads
+    // may both compute the same power, but they compute the same value.
+    private static class Powers
+    {
+        private static final int MIN_EXPONENT = -292;
+        private static final int MAX_EXPONENT = 324;
+
+        private static final Power[] TABLE = 
+            new Power[MAX_EXPONENT - MIN_EXPONENT + 1];
+
+        /*
+         * Returns the approximation of a power of ten.
+         *
+         * @param e The exponent of the power.
+         * @return The approximation of the power.
+         */
+        private static Power get(int e)
+        {
+            Power power = TABLE[e - MIN_EXPONENT];
+            if (power == null)
+                TABLE[e - MIN_EXPONENT] = power = compute(e);
+
+            return power;
+        }
+
+        /*
+         * Computes the approximation of a power of ten: 
+         * g = floor(10^e 2^-r) + 1, where r = floor(log2(10^e)) - 125.
+         *
+         * @param e The exponent of the power.
+         * @return The approximation of the power.
+         */
+        private static Power compute(int e)
+        {
+            BigInteger numerator = BigInteger.ONE;
+            BigInteger denominator = BigInteger.ONE;
+
+            if (e >= 0)
+                numerator = BigInteger.TEN.pow(e);
+            else
+                denominator = BigInteger.TEN.pow(-e);
+
+            int r = flog2pow10(e) - 125;
+            if (r < 0)
+                numerator = numerator.shiftLeft(-r);
+            else
+                denominator = denominator.shiftLeft(r);
+
+            BigInteger g = numerator.divide(denominator).add(BigInteger.ONE);
+
+            return new Power(g.shiftRight(63).longValue(), 
+                g.and(BigInteger.valueOf(MASK_63)).longValue());
+        }
+    }
+
+    // An approximation g of a power of ten, as its high and
+    // its low 63 bits.
+    private static class Power
+    {
+        private final long g1;
+        private final long g0;
+
+        private Power(long g1, long g0)
+        {
+            this.g1 = g1;
+            this.g0 = g0;
+        }
+    }
+
+    // The significand f and exponent e of the decimal f * 10^e
+    // that was most recently found by toDecimal. These are
+    // returned in fields so as not to allocate.
+    private long f;
+    private int e;
+
+    /**
+     * Formats a value as a string.
+     *
+     * @param value A value.
+     * @return The value as a string.
+     */
+    static String toString(double value)
+    {
+        byte[] bytes = new byte[MAX_LENGTH];
+        int length = new DoubleFormatter().format(value, bytes, 0);
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writes a value into an array of bytes.
+     *
+     * @param value A value.
+     * @param bytes The array, which must have room for MAX_LENGTH
+     * bytes after position.
+     * @param position The index in bytes at which to write.
+     * @return The index in bytes one past the last byte written.
+     */
+    int format(double value, byte[] bytes, int position)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & T_MASK;
+        int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+
+        if (bq == 0 && t == 0)
+        {
+            if (bits < 0) bytes[position++] = '-';
+            bytes[position++] = '0';
+            return position;
+        }
+
+        if (bq == 0 || bq > MAX_BQ)
+            return slowPath(value, bytes, position);
+
+        if (bits < 0) bytes[position++] = '-';
+
+        int mq = -Q_MIN + 1 - bq;
+        long c = C_MIN | t;
+
+        // An integer needs no search for its digits.
+        if (mq < P && (c >> mq) << mq == c)
+            setDecimal(c >> mq, 0);
+        else if (t == 0)
+            return slowPath(value, bytes, position - (bits < 0 ? 1 : 0));
+        else
+            toDecimal(-mq, c);
+
+        return write(bytes, position, digits(f));
+    }
+
+    /*
+     * Finds the shortest decimal that rounds to c * 2^q, where
+     * c is not a power of two, so that the doubles on either 
+     * side of it are equally far from it.
+     */
+    private void toDecimal(int q, long c)
+    {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl = cb - 2;
+        int k = flog10pow2(q);
+
+        int h = q + flog2pow10(-k) + 2;
+        Power power = Powers.get(-k);
+        long g1 = power.g1;
+        long g0 = power.g0;
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100)
+        {
+            // Try a decimal with one digit fewer than s.
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+
+            if (upin != wpin)
+            {
+                setDecimal(upin ? sp10 : tp10, k);
+                return;
+            }
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+
+        if (uin != win)
+        {
+            setDecimal(uin ? s : t, k);
+            return;
+        }
+
+        long cmp = vb - (s + t << 1);
+        setDecimal(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k);
+    }
+
+    /*
+     * Records the decimal f * 10^e, without the trailing
+     * zeros of f.
+     */
+    private void setDecimal(long f, int e)
+    {
+        while (f % 10 == 0)
+        {
+            f /= 10;
+            e++;
+        }
+
+        this.f = f;
+        this.e = e;
+    }
+
+    /*
+     * Writes the decimal f * 10^e in the format of Double.toString,
+     * without the trailing ".0" of an integer.
+     *
+     * @param length The amount of digits of f.
+     */
+    private int write(byte[] bytes, int position, int length)
+    {
+        // The value is 0.d1d2...dn * 10^exponent
+        int exponent = e + length;
+
+        if (0 < exponent && exponent <= 7)
+        {
+            if (length <= exponent)
+            {
+                position = writeDigits(bytes, position, f, length);
+                for (int i = length; i < exponent; i++)
+                    bytes[position++] = '0';
+                return position;
+            }
+
+            long scale = POWERS_OF_TEN[length - exponent];
+            position = writeDigits(bytes, position, f / scale, exponent);
+            bytes[position++] = '.';
+            return writeDigits(bytes, position, f % scale, length - exponent);
+        }
+
+        if (-3 < exponent && exponent <= 0)
+        {
+            bytes[position++] = '0';
+            bytes[position++] = '.';
+            for (int i = exponent; i < 0; i++)
+                bytes[position++] = '0';
+            return writeDigits(bytes, position, f, length);
+        }
+
+        long scale = POWERS_OF_TEN[length - 1];
+        bytes[position++] = (byte) ('0' + f / scale);
+        bytes[position++] = '.';
+
+        if (length == 1)
+            bytes[position++] = '0';
+        else
+            position = writeDigits(bytes, position, f % scale, length - 1);
+
+        bytes[position++] = 'E';
+        int n = exponent - 1;
+        if (n < 0)
+        {
+            bytes[position++] = '-';
+            n = -n;
+        }
+
+        return writeDigits(bytes, position, n, n >= 100 ? 3 : n >= 10 ? 2 : 1);
+    }
+
+    /*
+     * Writes the last length digits of n, including leading zeros.
+     */
+    private static int writeDigits(byte[] bytes, int position, long n, int length)
+    {
+        for (int i = position + length - 1; i >= position; i--)
+        {
+            bytes[i] = (byte) ('0' + n % 10);
+            n /= 10;
+        }
+
+        return position + length;
+    }
+
+    /*
+     * Returns the amount of decimal digits of a positive integer.
+     */
+    private static int digits(long n)
+    {
+        int length = 1;
+        while (length < POWERS_OF_TEN.length && n >= POWERS_OF_TEN[length])
+            length++;
+
+        return length;
+    }
+
+    /*
+     * Writes a value with Double.toString.
+     */
+    private static int slowPath(double value, byte[] bytes, int position)
+    {
+        String text = Double.toString(value);
+        int length = text.length();
+
+        if (text.endsWith(".0"))
+        {
+            // Integer, so remove the trailing 0
+            length -= 2;
+        }
+
+        for (int i = 0; i < length; i++)
+            bytes[position++] = (byte) text.charAt(i);
+
+        return position;
+    }
+
+    /*
+     * Returns the bits of g * cp / 2^127, rounded to odd (see
+     * the Schubfach paper).
+     */
+    private static long rop(long g1, long g0, long cp)
+    {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    // floor(log10(2^q))
+    private static int flog10pow2(int q)
+    {
+        return (int) (q * 661_971_961_083L >> 41);
+    }
+
+    // floor(log2(10^e))
+    private static int flog2pow10(int e)
+    {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+}
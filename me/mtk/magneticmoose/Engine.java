@@ -0,0 +1,89 @@
+package me.mtk.magneticmoose;
+
+// The engines that may evaluate the top-level expressions of a
+// program, one of which is chosen with --engine. Each parses a batch
+// of top-level expressions into a Forms of its own, which evaluates
+// them.
+enum Engine
+{
+    // The Interpreter walks the AST of each expression, which it
+    // may evaluate in parallel (see Interpreter).
+    INTERPRETER
+    {
+        @Override
+        Forms forms(Interpreter interpreter)
+        {
+            return new Forms.Interpreted(interpreter);
+        }
+    },
+
+    // The Compiler compiles the AST of each expression into a tree
+    // of Nodes, each specialized for its operator, as soon as it is
+    // parsed. The expressions are evaluated one at a time.
+    COMPILER
+    {
+        @Override
+        Forms forms(Interpreter interpreter)
+        {
+            return new Forms.Compiled(new Compiler()::compile);
+        }
+    },
+
+    // The Parser encodes each expression straight into a Chunk,
+    // without building its AST, which a VirtualMachine executes.
+    // The expressions are executed one at a time.
+    VM
+    {
+        @Override
+        Forms forms(Interpreter interpreter)
+        {
+            return new Forms.Chunks();
+        }
+    },
+
+    // The BytecodeCompiler compiles the AST of each expression into
+    // a class of its own as soon as it is parsed, so that the AST
+    // may be discarded, and the JIT compiler compiles its code as it
+    // would any Java method. The expressions are evaluated one at a
+    // time.
+    BYTECODE
+    {
+        @Override
+        Forms forms(Interpreter interpreter)
+        {
+            return new Forms.Compiled(new BytecodeCompiler()::compile);
+        }
+    };
+
+    /**
+     * Creates an empty batch of top-level expressions.
+     *
+     * @param interpreter The Interpreter of the program.
+     * @return A Forms into which this engine parses.
+     */
+    abstract Forms forms(Interpreter interpreter);
+
+    /**
+     * Returns the name of this engine on the command line.
+     *
+     * @return The name of this engine.
+     */
+    String optionName()
+    {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Returns the engine of the given name on the command line.
+     *
+     * @param name The argument of the --engine option.
+     * @return The engine, or null if there is none by that name.
+     */
+    static Engine named(String name)
+    {
+        for (Engine engine : values())
+            if (engine.optionName().equals(name)) return engine;
+
+        return null;
+    }
+}
@@ -0,0 +1,30 @@
+package me.mtk.magneticmoose;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// An EvaluateEvent is recorded by Java Flight Recorder for each
+// top-level expression that the Interpreter evaluates, including
+// one that throws a RuntimeError. Events are only created once the
+// Flight Recorder has been initialized.
+@Name("me.mtk.magneticmoose.Evaluate")
+@Label("Evaluate")
+@Category("Magnetic Moose")
+@Description("Evaluating a top-level expression")
+@StackTrace(false)
+class EvaluateEvent extends jdk.jfr.Event
+{
+    @Label("Line")
+    @Description("The line of the operator of the expression")
+    int line;
+
+    @Label("Column")
+    int column;
+
+    @Label("Height")
+    @Description("The height of the tree of the expression")
+    int height;
+}
@@ -9,8 +9,29 @@ abstract class Expr
 		T visitNumberExpr(Number expr);
 	}
 
+	// A Visitor whose methods return a primitive double,
+	// so that evaluating an expression does not box its value.
+	interface DoubleVisitor
+	{
+		double visitBinaryExpr(Binary expr);
+		double visitUnaryExpr(Unary expr);
+		double visitNumberExpr(Number expr);
+	}
+
+	// The height of the expression's tree, which is 1 for a
+	// number. Evaluators use this to decide whether an expression
+	// is shallow enough to be evaluated recursively.
+	final int height;
+
+	Expr(int height)
+	{
+		this.height = height;
+	}
+
 	abstract <T> T accept(Visitor<T> visitor);
 
+	abstract double accept(DoubleVisitor visitor);
+
 	static class Binary extends Expr
 	{
 		final Token operator;
@@ -19,6 +40,7 @@ abstract class Expr
 
 		public Binary(Token operator, Expr first, Expr second)
 		{
+			super(1 + Math.max(first.height, second.height));
 			this.operator = operator;
 			this.first = first;
 			this.second = second;
@@ -29,6 +51,66 @@ abstract class Expr
 		{
 			return visitor.visitBinaryExpr(this);
 		}
+
+		@Override
+		public double accept(DoubleVisitor visitor)
+		{
+			return visitor.visitBinaryExpr(this);
+		}
+	}
+
+	// An expression that the Parser shares among all of the places
+	// where it occurs in a program (see Interner). It remembers its
+	// value once it has been evaluated, so that it is evaluated only
+	// once. Its value is written before it is marked as evaluated, 
+	// which is volatile, so a thread that sees that it has been 
+	// evaluated also sees its value. Two threads may both evaluate 
+	// it at once, but they compute the same value. An expression 
+	// that throws a RuntimeError is not marked as evaluated.
+	interface Shared
+	{
+		boolean isEvaluated();
+
+		double value();
+
+		void remember(double value);
+	}
+
+	static class SharedBinary extends Binary implements Shared
+	{
+		private double value;
+		private volatile boolean evaluated = false;
+
+		public SharedBinary(Token operator, Expr first, Expr second)
+		{
+			super(operator, first, second);
+		}
+
+		@Override
+		public double accept(DoubleVisitor visitor)
+		{
+			if (!evaluated) remember(visitor.visitBinaryExpr(this));
+			return value;
+		}
+
+		@Override
+		public boolean isEvaluated()
+		{
+			return evaluated;
+		}
+
+		@Override
+		public double value()
+		{
+			return value;
+		}
+
+		@Override
+		public void remember(double value)
+		{
+			this.value = value;
+			evaluated = true;
+		}
 	}
 
 	static class Unary extends Expr
@@ -38,6 +120,7 @@ abstract class Expr
 
 		public Unary(Token operator, Expr right)
 		{
+			super(1 + right.height);
 			this.operator = operator;
 			this.right = right;
 		}
@@ -47,6 +130,49 @@ abstract class Expr
 		{
 			return visitor.visitUnaryExpr(this);
 		}
+
+		@Override
+		public double accept(DoubleVisitor visitor)
+		{
+			return visitor.visitUnaryExpr(this);
+		}
+	}
+
+	static class SharedUnary extends Unary implements Shared
+	{
+		private double value;
+		private volatile boolean evaluated = false;
+
+		public SharedUnary(Token operator, Expr right)
+		{
+			super(operator, right);
+		}
+
+		@Override
+		public double accept(DoubleVisitor visitor)
+		{
+			if (!evaluated) remember(visitor.visitUnaryExpr(this));
+			return value;
+		}
+
+		@Override
+		public boolean isEvaluated()
+		{
+			return evaluated;
+		}
+
+		@Override
+		public double value()
+		{
+			return value;
+		}
+
+		@Override
+		public void remember(double value)
+		{
+			this.value = value;
+			evaluated = true;
+		}
 	}
 
 	static class Number extends Expr
@@ -55,6 +181,7 @@ abstract class Expr
 
 		public Number(double value)
 		{
+			super(1);
 			this.value = value;
 		}
 
@@ -63,5 +190,11 @@ abstract class Expr
 		{
 			return visitor.visitNumberExpr(this);
 		}
+
+		@Override
+		public double accept(DoubleVisitor visitor)
+		{
+			return visitor.visitNumberExpr(this);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package me.mtk.magneticmoose;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A FormCache remembers the top-level expressions (forms) that have
+// been run, keyed by their source text, along with what they evaluated
+// to, so that a form that is run again, in the same program or in
+// another one, is neither parsed nor interpreted again. Because every
+// form evaluates to the same value wherever it appears, the value of
+// a form depends on nothing but its text. The text of a form excludes
+// the whitespace and comments that precede it (see FormIndex).
+//
+// Looking up a form costs about as much as running a short form, so
+// forms shorter than MIN_LENGTH are neither looked up nor cached.
+// Only the value of a form is kept, not its expression, as a form
+// that is found in the cache is not evaluated. A form that threw a
+// RuntimeError is kept along with where the error is relative to the
+// start of the form, so that it can be reported wherever the form is.
+//
+// The cache holds at most a given amount of bytes, as estimated from
+// the length of each form. When it is full, the forms that were least
+// recently used are evicted first. Its methods are synchronized, as it
+// is shared by the Sessions of the daemon and of a batch, which run on
+// several threads at once.
+class FormCache
+{
+    // The length of the shortest form that is cached.
+    static final int MIN_LENGTH = 64;
+
+    // The estimated size in bytes of an entry of the cache, apart
+    // from the characters of its text, each of which takes up a byte.
+    private static final int ENTRY_WEIGHT = 128;
+
+    // The estimated size in bytes of an error, with its token
+    // and its stack trace.
+    private static final int ERROR_WEIGHT = 1024;
+
+    // A form that has been run.
+    static class Entry
+    {
+        // The value of the form, unless it threw an error.
+        final double value;
+
+        // The error that the form threw, or null if none. The line
+        // of its token is relative to the line on which the form
+        // starts, and so is its column if it is on that line.
+        final RuntimeError error;
+
+        // The estimated size of the entry in bytes.
+        private final long weight;
+
+        private Entry(double value, RuntimeError error, long weight)
+        {
+            this.value = value;
+            this.error = error;
+            this.weight = weight;
+        }
+    }
+
+    // The entries, from the least to the most recently used.
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    // The greatest total weight of the entries.
+    private final long capacity;
+
+    // The total weight of the entries.
+    private long weight = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Constructs an empty FormCache.
+     *
+     * @param capacity The greatest amount of bytes that the
+     * cache may hold.
+     */
+    FormCache(long capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the entry of a form, if the form has been run.
+     *
+     * @param form The text of a form.
+     * @return The entry of the form or null if there is none.
+     */
+    synchronized Entry get(String form)
+    {
+        Entry entry = entries.get(form);
+
+        if (entry != null)
+            hits++;
+        else
+            misses++;
+
+        return entry;
+    }
+
+    /**
+     * Adds the entry of a form that has been run, evicting the
+     * least recently used entries if the cache is full.
+     *
+     * @param form The text of the form.
+     * @param value The value of the form.
+     * @param error The error that the form threw, positioned relative
+     * to the form (see Entry), or null.
+     */
+    synchronized void put(String form, double value, RuntimeError error)
+    {
+        long entryWeight = ENTRY_WEIGHT + form.length();
+        if (error != null) entryWeight += ERROR_WEIGHT;
+
+        // A form that would evict everything is not worth keeping.
+        if (entryWeight > capacity) return;
+
+        Entry previous = entries.put(form, new Entry(value, error, entryWeight));
+        if (previous != null) weight -= previous.weight;
+        weight += entryWeight;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > capacity)
+        {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized long getHits()
+    {
+        return hits;
+    }
+
+    synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * Returns the estimated size of the entries.
+     *
+     * @return The size in bytes.
+     */
+    synchronized long getWeight()
+    {
+        return weight;
+    }
+}
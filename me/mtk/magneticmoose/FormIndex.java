@@ -0,0 +1,246 @@
+package me.mtk.magneticmoose;
+
+import java.util.Arrays;
+
+// A FormIndex divides a source program into segments that may be
+// lexed and parsed independently of one another, and thus in
+// parallel. Each segment ends just after the closing parenthesis
+// of a top-level expression (a form), so it holds the whitespace
+// and comments that precede the form followed by the form itself.
+// Any text after the last form is a segment of its own.
+//
+// Finding the segments requires only a quick pass over the source
+// program that counts parentheses (and lines), skipping comments 
+// exactly as the Lexer does, so that a parenthesis in a comment
+// is not mistaken for one that opens or closes a form. The line
+// on which each segment starts is recorded, so a Lexer of a segment
+// can report the same line and column numbers as a Lexer of the
+// entire source program.
+class FormIndex
+{
+    // The index in source of the first character of each segment.
+    private int[] starts = new int[64];
+
+    // The number of the line on which each segment starts.
+    private int[] lines = new int[64];
+
+    // The index in source of the first character of that line.
+    private int[] lineStarts = new int[64];
+
+    // The amount of characters of that line before each segment.
+    private int[] columns = new int[64];
+
+    // The amount of segments.
+    private int size = 0;
+
+    // The length of the source program.
+    private final int length;
+
+    /**
+     * Constructs the FormIndex of the given source program.
+     * 
+     * @param source A source program.
+     */
+    public FormIndex(CharSequence source)
+    {
+        length = source.length();
+
+        // The current nesting depth of parentheses.
+        int depth = 0;
+        int line = 1;
+        int lineStart = 0;
+        int position = 0;
+
+        if (length > 0) add(source, 0, line, lineStart);
+
+        while (position < length)
+        {
+            char c = source.charAt(position++);
+
+            switch (c)
+            {
+                case '\n':
+                    line++;
+                    lineStart = position;
+                    break;
+
+                case '(':
+                    depth++;
+                    break;
+
+                case ')':
+                    // An unmatched parenthesis is a form (an erroneous
+                    // one) of its own, so the depth never goes below 0.
+                    if (depth > 0) depth--;
+                    if (depth == 0 && position < length) 
+                        add(source, position, line, lineStart);
+                    break;
+
+                case '/':
+                    if (position < length && source.charAt(position) == '/')
+                    {
+                        // Skip an inline comment, up to the newline
+                        while (position < length && source.charAt(position) != '\n')
+                            position++;
+                    }
+                    else if (position < length && source.charAt(position) == '*')
+                    {
+                        // Skip a block comment, including its newlines
+                        position++;
+                        while (position < length && !(source.charAt(position) == '*'
+                            && position + 1 < length && source.charAt(position + 1) == '/'))
+                        {
+                            if (source.charAt(position++) == '\n')
+                            {
+                                line++;
+                                lineStart = position;
+                            }
+                        }
+                        position = Math.min(position + 2, length);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of segments.
+     * 
+     * @return The amount of segments.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the index in source of the first character
+     * of the ith segment.
+     * 
+     * @param i The index of a segment.
+     * @return The start of the segment.
+     */
+    public int start(int i)
+    {
+        return starts[i];
+    }
+
+    /**
+     * Returns the number of the line on which the ith
+     * segment starts.
+     * 
+     * @param i The index of a segment.
+     * @return The line number.
+     */
+    public int line(int i)
+    {
+        return lines[i];
+    }
+
+    /**
+     * Returns the index in source one past the last character
+     * of the ith segment.
+     * 
+     * @param i The index of a segment.
+     * @return The end of the segment.
+     */
+    public int end(int i)
+    {
+        return i + 1 < size ? starts[i + 1] : length;
+    }
+
+    /**
+     * Returns the index in source of the first character of the
+     * form of the ith segment, that is, of its first character
+     * that is neither whitespace nor part of a comment. A block
+     * comment that is not closed, which the Lexer reports as an
+     * error, is taken to be the form of the segment.
+     * 
+     * @param source The source program of this FormIndex.
+     * @param i The index of a segment.
+     * @return The start of the form, or the end of the segment
+     * if it holds only whitespace and closed comments.
+     */
+    public int formStart(CharSequence source, int i)
+    {
+        int position = start(i);
+        int end = end(i);
+
+        while (position < end)
+        {
+            char c = source.charAt(position);
+
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n')
+                position++;
+            else if (c == '/' && position + 1 < end && source.charAt(position + 1) == '/')
+            {
+                // Skip an inline comment, up to the newline
+                while (position < end && source.charAt(position) != '\n')
+                    position++;
+            }
+            else if (c == '/' && position + 1 < end && source.charAt(position + 1) == '*')
+            {
+                // Skip a block comment, unless it is not closed
+                int commentStart = position;
+                position += 2;
+                while (position < end && !(source.charAt(position) == '*'
+                    && position + 1 < end && source.charAt(position + 1) == '/'))
+                    position++;
+
+                if (position + 1 >= end) return commentStart;
+                position += 2;
+            }
+            else
+                break;
+        }
+
+        return position;
+    }
+
+    /**
+     * Creates a Lexer that scans the segments in the range [first, last).
+     * 
+     * @param source The source program of this FormIndex.
+     * @param first The index of the first segment to scan.
+     * @param last One past the index of the last segment to scan.
+     * @return A Lexer of the segments.
+     */
+    public Lexer lexer(CharSequence source, int first, int last)
+    {
+        return new Lexer(source, start(first), end(last - 1), lines[first], 
+            lineStarts[first], columns[first]);
+    }
+
+    /*
+     * Adds a segment.
+     * 
+     * @param source The source program.
+     * @param start The index in source of its first character.
+     * @param line The number of the line on which it starts.
+     * @param lineStart The index in source of the first character
+     * of that line.
+     */
+    private void add(CharSequence source, int start, int line, int lineStart)
+    {
+        if (size == starts.length)
+        {
+            starts = Arrays.copyOf(starts, size * 2);
+            lines = Arrays.copyOf(lines, size * 2);
+            lineStarts = Arrays.copyOf(lineStarts, size * 2);
+            columns = Arrays.copyOf(columns, size * 2);
+        }
+
+        // The characters are counted from the previous segment if
+        // it is on the same line, so that a line is counted once.
+        if (size > 0 && lineStarts[size - 1] == lineStart)
+            columns[size] = columns[size - 1] 
+                + ByteSequence.columns(source, starts[size - 1], start);
+        else
+            columns[size] = ByteSequence.columns(source, lineStart, start);
+
+        starts[size] = start;
+        lines[size] = line;
+        lineStarts[size] = lineStart;
+        size++;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,172 @@
+package me.mtk.magneticmoose;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+
+// A batch of top-level expressions (forms) of a program, in the form
+// in which an Engine evaluates them. The forms are parsed into the
+// batch one at a time, evaluated together, and then cleared, so that
+// the batch may be reused for the next forms of the program.
+abstract class Forms
+{
+    /**
+     * Parses the next top-level expression of the program
+     * into this batch.
+     *
+     * @param parser The Parser of the program.
+     * @return False if there are no more expressions;
+     * True otherwise.
+     */
+    abstract boolean parse(Parser parser) throws ParseError;
+
+    /**
+     * Returns the amount of top-level expressions in this batch.
+     *
+     * @return The amount of expressions.
+     */
+    abstract int size();
+
+    /**
+     * Removes every top-level expression from this batch.
+     */
+    abstract void clear();
+
+    /**
+     * Evaluates the top-level expressions of this batch, sending
+     * their values to sink in order. If an expression throws a
+     * RuntimeError, the values of the expressions before it have
+     * been sent by the time it is thrown.
+     *
+     * @param pool The pool of threads on which the expressions may
+     * be evaluated in parallel, or null to evaluate them one at a time.
+     * @param sink Receives the value of each expression.
+     */
+    abstract void evaluate(ForkJoinPool pool, DoubleConsumer sink)
+        throws RuntimeError;
+
+    // The ASTs of the forms, which the Interpreter evaluates.
+    static class Interpreted extends Forms
+    {
+        private final Interpreter interpreter;
+        private final List<Expr> expressions = new ArrayList<>();
+
+        Interpreted(Interpreter interpreter)
+        {
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        boolean parse(Parser parser)
+        {
+            Expr expr = parser.next();
+            if (expr == null) return false;
+
+            expressions.add(expr);
+            return true;
+        }
+
+        @Override
+        int size()
+        {
+            return expressions.size();
+        }
+
+        @Override
+        void clear()
+        {
+            expressions.clear();
+        }
+
+        @Override
+        void evaluate(ForkJoinPool pool, DoubleConsumer sink)
+        {
+            if (pool != null)
+                interpreter.interpret(expressions, pool, sink);
+            else
+                interpreter.interpret(expressions, sink);
+        }
+    }
+
+    // The Nodes of the forms, each of which is compiled from the
+    // AST of its form as soon as it is parsed.
+    static class Compiled extends Forms
+    {
+        private final Function<Expr, Node> compiler;
+        private final List<Node> nodes = new ArrayList<>();
+
+        Compiled(Function<Expr, Node> compiler)
+        {
+            this.compiler = compiler;
+        }
+
+        @Override
+        boolean parse(Parser parser)
+        {
+            Expr expr = parser.next();
+            if (expr == null) return false;
+
+            nodes.add(compiler.apply(expr));
+            return true;
+        }
+
+        @Override
+        int size()
+        {
+            return nodes.size();
+        }
+
+        @Override
+        void clear()
+        {
+            nodes.clear();
+        }
+
+        @Override
+        void evaluate(ForkJoinPool pool, DoubleConsumer sink)
+        {
+            for (Node node : nodes)
+                sink.accept(node.getAsDouble());
+        }
+    }
+
+    // The Chunks of the forms, which the Parser encodes without
+    // building their ASTs (see Parser.nextChunk), and which are
+    // executed one at a time by a VirtualMachine of their own.
+    static class Chunks extends Forms
+    {
+        private final VirtualMachine vm = new VirtualMachine();
+        private final List<Chunk> chunks = new ArrayList<>();
+
+        @Override
+        boolean parse(Parser parser)
+        {
+            Chunk chunk = parser.nextChunk();
+            if (chunk == null) return false;
+
+            chunks.add(chunk);
+            return true;
+        }
+
+        @Override
+        int size()
+        {
+            return chunks.size();
+        }
+
+        @Override
+        void clear()
+        {
+            chunks.clear();
+        }
+
+        @Override
+        void evaluate(ForkJoinPool pool, DoubleConsumer sink)
+        {
+            for (Chunk chunk : chunks)
+                sink.accept(vm.execute(chunk));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package me.mtk.magneticmoose;
+
+// An Interner hash-conses the nodes that the Parser creates: a node
+// that is structurally equal to one that has already been created,
+// that is, a number with the same value, or a unary or binary
+// expression with the same operator and the very same operands, is
+// not created again, and the node that was created first is returned
+// instead. As operands are interned before the expressions that contain
+// them, structurally equal subtrees are thus always the same object,
+// and the expressions of a program form a directed acyclic graph in
+// which every common subexpression occurs once.
+//
+// The unary and binary expressions are Shared expressions, which are
+// evaluated only once. A shared expression keeps the operator token of
+// its first occurrence. The Parser creates nodes in post-order, which
+// is the order in which the Interpreter evaluates them, so the first
+// occurrence of an expression is the first one to be evaluated, and
+// a RuntimeError that it throws points where it would point if the
+// expressions were not shared.
+//
+// The nodes are kept in an open-addressing hash table, so looking up
+// a node allocates nothing. Once the table holds MAX_SIZE nodes it is
+// emptied, so that it does not keep a long program in memory.
+class Interner
+{
+    // The amount of nodes at which the table is emptied.
+    private static final int MAX_SIZE = 1 << 18;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The nodes, at the index of their hash or, if another node
+    // is there, at the next free index after it.
+    private Expr[] table = new Expr[INITIAL_CAPACITY];
+
+    // The amount of nodes in the table.
+    private int size = 0;
+
+    /**
+     * Returns the number node of a value.
+     *
+     * @param value The value of the number.
+     * @return The node.
+     */
+    Expr number(double value)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        int mask = table.length - 1;
+        int index = hash(Long.hashCode(bits), 0, 0) & mask;
+
+        for (Expr expr; (expr = table[index]) != null; index = (index + 1) & mask)
+        {
+            if (expr instanceof Expr.Number
+                && Double.doubleToRawLongBits(((Expr.Number) expr).value) == bits)
+                return expr;
+        }
+
+        return add(index, new Expr.Number(value));
+    }
+
+    /**
+     * Returns the unary expression of an operator and an operand.
+     *
+     * @param operator The operator.
+     * @param right The operand, which has been interned.
+     * @return The expression.
+     */
+    Expr unary(Token operator, Expr right)
+    {
+        int mask = table.length - 1;
+        int index = hash(operator.type.ordinal(), identity(right), 1) & mask;
+
+        for (Expr expr; (expr = table[index]) != null; index = (index + 1) & mask)
+        {
+            if (expr instanceof Expr.Unary
+                && ((Expr.Unary) expr).operator.type == operator.type
+                && ((Expr.Unary) expr).right == right)
+                return expr;
+        }
+
+        return add(index, new Expr.SharedUnary(operator, right));
+    }
+
+    /**
+     * Returns the binary expression of an operator and its operands.
+     *
+     * @param operator The operator.
+     * @param first The first operand, which has been interned.
+     * @param second The second operand, which has been interned.
+     * @return The expression.
+     */
+    Expr binary(Token operator, Expr first, Expr second)
+    {
+        int mask = table.length - 1;
+        int index = hash(operator.type.ordinal(), identity(first),
+            identity(second)) & mask;
+
+        for (Expr expr; (expr = table[index]) != null; index = (index + 1) & mask)
+        {
+            if (expr instanceof Expr.Binary
+                && ((Expr.Binary) expr).operator.type == operator.type
+                && ((Expr.Binary) expr).first == first
+                && ((Expr.Binary) expr).second == second)
+                return expr;
+        }
+
+        return add(index, new Expr.SharedBinary(operator, first, second));
+    }
+
+    /*
+     * Puts a new node in the table at a free index, growing the
+     * table when it is three quarters full.
+     *
+     * @param index The free index of the node.
+     * @param expr The node.
+     * @return The node.
+     */
+    private Expr add(int index, Expr expr)
+    {
+        if (size == MAX_SIZE)
+        {
+            table = new Expr[INITIAL_CAPACITY];
+            size = 0;
+            index = hash(expr) & (table.length - 1);
+        }
+
+        table[index] = expr;
+        size++;
+
+        if (4 * size > 3 * table.length)
+        {
+            Expr[] old = table;
+            table = new Expr[2 * old.length];
+            int mask = table.length - 1;
+
+            for (Expr node : old)
+            {
+                if (node == null) continue;
+
+                int i = hash(node) & mask;
+                while (table[i] != null)
+                    i = (i + 1) & mask;
+                table[i] = node;
+            }
+        }
+
+        return expr;
+    }
+
+    /*
+     * Returns the hash of a node in the table, which is the hash
+     * with which it was looked up.
+     *
+     * @param expr A node.
+     * @return The hash.
+     */
+    private static int hash(Expr expr)
+    {
+        if (expr instanceof Expr.Number)
+        {
+            long bits = Double.doubleToRawLongBits(((Expr.Number) expr).value);
+            return hash(Long.hashCode(bits), 0, 0);
+        }
+        else if (expr instanceof Expr.Unary)
+        {
+            Expr.Unary unary = (Expr.Unary) expr;
+            return hash(unary.operator.type.ordinal(), identity(unary.right), 1);
+        }
+
+        Expr.Binary binary = (Expr.Binary) expr;
+        return hash(binary.operator.type.ordinal(), identity(binary.first),
+            identity(binary.second));
+    }
+
+    /*
+     * Mixes three ints into a hash whose low bits depend on
+     * all of their bits.
+     */
+    private static int hash(int a, int b, int c)
+    {
+        int h = a * 0x9E3779B9 + b;
+        h = h * 0x9E3779B9 + c;
+        return h ^ (h >>> 16);
+    }
+
+    /*
+     * Returns the identity hash of a node. Operands are compared
+     * by identity, as equal operands are the same object.
+     */
+    private static int identity(Expr expr)
+    {
+        return System.identityHashCode(expr);
+    }
+}
@@ -1,14 +1,274 @@
 package me.mtk.magneticmoose;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+
+import jdk.jfr.FlightRecorder;
 
 // The Interpreter is the part of the interpreter that, well,
 // interprets the source code. It takes in an abstract syntax
 // tree (AST) as input and outputs a list of strings representing
-// the output of the program.
-public class Interpreter implements Expr.Visitor<Object>
+// the output of the program. Alternatively, the value of each 
+// expression may be sent to a DoubleConsumer as soon as it has
+// been computed, without being converted to a string.
+//
+// Every expression of the language evaluates to a number, so
+// the Interpreter is a DoubleVisitor: values are passed around
+// as primitive doubles and are never boxed.
+//
+// The Interpreter has no mutable state, so it may interpret
+// several expressions at once on different threads.
+public class Interpreter implements Expr.DoubleVisitor
 {
+    // The height of the tallest expression that is evaluated
+    // recursively. Taller expressions are evaluated with 
+    // explicit stacks so as not to overflow the call stack.
+    private static final int MAX_RECURSION_DEPTH = 1000;
+
+    // The least amount of operands that an addition or 
+    // multiplication must have to be reduced in parallel.
+    static final int MIN_REDUCTION_OPERANDS = 4096;
+
+    // The pool of threads on which the operands of wide additions
+    // and multiplications are reduced in parallel, or null if 
+    // they are evaluated one after another.
+    private final ForkJoinPool reductionPool;
+
+    // Indicates whether additions that are reduced in parallel
+    // use compensated (Neumaier) summation.
+    private final boolean compensated;
+
+    // Interprets a range of a list of top-level expressions, 
+    // splitting the range in half until it is small enough to
+    // be interpreted by a single thread.
+    private class InterpretTask extends RecursiveAction
+    {
+        // The largest range that is not split.
+        private static final int THRESHOLD = 8;
+
+        private final List<Expr> expressions;
+        private final double[] values;
+        private final RuntimeError[] errors;
+
+        // The index of the first expression that threw a
+        // RuntimeError, which is shared by all tasks so that
+        // the expressions after it need not be interpreted.
+        private final AtomicInteger firstError;
+
+        private final int start;
+        private final int end;
+
+        private InterpretTask(List<Expr> expressions, double[] values, 
+            RuntimeError[] errors, AtomicInteger firstError, int start, int end)
+        {
+            this.expressions = expressions;
+            this.values = values;
+            this.errors = errors;
+            this.firstError = firstError;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (end - start > THRESHOLD)
+            {
+                int middle = (start + end) >>> 1;
+                invokeAll(
+                    new InterpretTask(expressions, values, errors, firstError, 
+                        start, middle),
+                    new InterpretTask(expressions, values, errors, firstError, 
+                        middle, end));
+                return;
+            }
+
+            for (int i = start; i < end && i < firstError.get(); i++)
+            {
+                try
+                {
+                    values[i] = evaluateForm(expressions.get(i));
+                }
+                catch (RuntimeError err)
+                {
+                    errors[i] = err;
+                    firstError.accumulateAndGet(i, Math::min);
+                }
+            }
+        }
+    }
+
+    // The reduction of a range of the operands of a wide addition
+    // or multiplication.
+    private static class Reduction
+    {
+        // The sum or product of the operands.
+        private double value;
+
+        // The accumulated rounding error of the sum, when
+        // compensated summation is used.
+        private double compensation;
+
+        // The error thrown by the first operand that threw one.
+        private RuntimeError error;
+
+        /*
+         * Adds a value to the sum. When compensated summation is used,
+         * the rounding error of the addition is accumulated separately
+         * (Neumaier's variant of Kahan summation).
+         * 
+         * @param addend The value to add.
+         * @param compensated Whether to accumulate the rounding error.
+         */
+        private void add(double addend, boolean compensated)
+        {
+            double sum = value + addend;
+
+            if (compensated)
+            {
+                if (Math.abs(value) >= Math.abs(addend))
+                    compensation += (value - sum) + addend;
+                else
+                    compensation += (addend - sum) + value;
+            }
+
+            value = sum;
+        }
+    }
+
+    // Reduces a range of the operands of a wide addition or 
+    // multiplication, splitting the range in half until it is
+    // small enough to be reduced by a single thread.
+    private class ReduceTask extends RecursiveTask<Reduction>
+    {
+        // The largest range that is not split.
+        private static final int THRESHOLD = 1024;
+
+        private final boolean isProduct;
+        private final Expr[] operands;
+        private final int start;
+        private final int end;
+
+        private ReduceTask(boolean isProduct, Expr[] operands, int start, int end)
+        {
+            this.isProduct = isProduct;
+            this.operands = operands;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Reduction compute()
+        {
+            if (end - start > THRESHOLD)
+            {
+                int middle = (start + end) >>> 1;
+                ReduceTask second = new ReduceTask(isProduct, operands, middle, end);
+                second.fork();
+                Reduction reduction = new ReduceTask(isProduct, operands, 
+                    start, middle).compute();
+                Reduction secondReduction = second.join();
+
+                // An error of the first half comes first in the source.
+                if (reduction.error == null)
+                    reduction.error = secondReduction.error;
+
+                if (isProduct)
+                    reduction.value *= secondReduction.value;
+                else
+                {
+                    reduction.add(secondReduction.value, compensated);
+                    reduction.compensation += secondReduction.compensation;
+                }
+
+                return reduction;
+            }
+
+            Reduction reduction = new Reduction();
+
+            try
+            {
+                reduction.value = evaluate(operands[start]);
+
+                for (int i = start + 1; i < end; i++)
+                {
+                    double operand = evaluate(operands[i]);
+
+                    if (isProduct)
+                        reduction.value *= operand;
+                    else
+                        reduction.add(operand, compensated);
+                }
+            }
+            catch (RuntimeError err)
+            {
+                reduction.error = err;
+            }
+
+            return reduction;
+        }
+    }
+
+    /**
+     * Constructs an Interpreter that evaluates every expression
+     * one operand after another, exactly as the expression is
+     * written.
+     */
+    public Interpreter()
+    {
+        this(null, false);
+    }
+
+    /**
+     * Constructs an Interpreter that reduces the operands of very 
+     * wide additions and multiplications (those of a single 
+     * parenthesized expression, such as (+ a b c ...), with at
+     * least 4096 operands, along with the operands of any form of
+     * the same operator that is its first operand) in parallel on
+     * the given pool.
+     * 
+     * The operands are split into ranges that are reduced 
+     * separately and then combined. This reassociates the 
+     * operation: ((a + b) + c) + d may be computed as 
+     * (a + b) + (c + d). Floating-point addition and multiplication
+     * are not associative, so the result may differ from that of
+     * evaluating the operands in order, by a rounding error for
+     * each operand in the worst case, and a product may overflow or
+     * underflow where the in-order product would not (or the other
+     * way around). With u = 2^-53, the unit roundoff of a double,
+     * and g = (n - 1)u / (1 - (n - 1)u), both the parallel and the
+     * in-order sum of n operands a1, ..., an are within g(|a1| + 
+     * ... + |an|) of the exact sum, so they differ by at most twice
+     * that; and both products, if neither overflows nor underflows,
+     * are within a relative error of g of the exact product.
+     *
+     * Compensated summation tracks the rounding error of each
+     * addition, so that the error of a sum no longer grows with the
+     * amount of operands: it is within 2u|S| + 2(nu)^2(|a1| + ... +
+     * |an|) of the exact sum S. Such a sum is usually as close to 
+     * the exact sum as a double can be, and is thus at least as 
+     * accurate as the in-order sum, though not always identical to
+     * it. Products are never compensated.
+     * 
+     * Every operand is still evaluated, so a RuntimeError is thrown
+     * for the first operand (in the order of the source program)
+     * that throws one, just as if the operands were evaluated in
+     * order.
+     * 
+     * @param reductionPool The pool on which operands are reduced.
+     * @param compensated Whether sums use compensated summation.
+     */
+    public Interpreter(ForkJoinPool reductionPool, boolean compensated)
+    {
+        this.reductionPool = reductionPool;
+        this.compensated = compensated;
+    }
 
     /**
      * Interprets the source program by walking, or traversing,
@@ -20,58 +280,177 @@ public class Interpreter implements Expr.Visitor<Object>
     public List<String> interpret(List<Expr> expressions) throws RuntimeError
     {
         List<String> values = new ArrayList<>();
+        interpret(expressions, value -> values.add(stringify(value)));
+        return values;
+    }
 
+    /**
+     * Interprets the top-level expressions one at a time, sending 
+     * the value of each to sink as soon as it has been computed.
+     * If an expression throws a RuntimeError, the values of the 
+     * expressions before it have already been sent.
+     * 
+     * @param expressions A list of expressions to interpret.
+     * @param sink Receives the value of each expression, in order.
+     */
+    public void interpret(List<Expr> expressions, DoubleConsumer sink) 
+        throws RuntimeError
+    {
         for (Expr expr : expressions)
-            values.add(stringify(evaluate(expr)));
-        
-        return values;
+            sink.accept(evaluateForm(expr));
+    }
+
+    /**
+     * Interprets the top-level expressions in parallel on the given
+     * pool of threads. The values of the expressions are nevertheless
+     * sent to sink in the order of the expressions, and a RuntimeError
+     * is thrown only after the values of the expressions before the
+     * one that threw it have been sent. That is, the output is the 
+     * same as if the expressions had been interpreted one at a time.
+     * 
+     * @param expressions A list of expressions to interpret.
+     * @param pool The pool of threads on which to interpret them.
+     * @param sink Receives the value of each expression, in order.
+     */
+    public void interpret(List<Expr> expressions, ForkJoinPool pool, 
+        DoubleConsumer sink) throws RuntimeError
+    {
+        int size = expressions.size();
+        double[] values = new double[size];
+        RuntimeError[] errors = new RuntimeError[size];
+        AtomicInteger firstError = new AtomicInteger(size);
+
+        pool.invoke(new InterpretTask(expressions, values, errors, 
+            firstError, 0, size));
+
+        for (int i = 0; i < size; i++)
+        {
+            if (errors[i] != null) throw errors[i];
+            sink.accept(values[i]);
+        }
+    }
+
+    /**
+     * Interprets a single top-level expression of the
+     * source program.
+     * 
+     * @param expr An expression to interpret.
+     * @return The value of the provided expression.
+     */
+    public String interpret(Expr expr) throws RuntimeError
+    {
+        return stringify(evaluateForm(expr));
+    }
+
+    /**
+     * Interprets a single top-level expression of the source
+     * program, sending its value to sink.
+     * 
+     * @param expr An expression to interpret.
+     * @param sink Receives the value of the provided expression.
+     */
+    public void interpret(Expr expr, DoubleConsumer sink) throws RuntimeError
+    {
+        sink.accept(evaluateForm(expr));
     }
 
     @Override
-    public Object visitNumberExpr(Expr.Number expr)
+    public double visitNumberExpr(Expr.Number expr)
     {
         return expr.value;
     }
 
     @Override
-    public Object visitUnaryExpr(Expr.Unary expr)
+    public double visitUnaryExpr(Expr.Unary expr)
     {
         Token operator = expr.operator;
-        Object right = evaluate(expr.right);
-
-        validateNumberOperand(operator, right);
+        double right = evaluate(expr.right);
 
         if (operator.type == TokenType.MINUS)
-            return - (double) right;
+            return -right;
         else
-            return (double) right;
+            return right;
     }
 
     @Override
-    public Object visitBinaryExpr(Expr.Binary expr)
+    public double visitBinaryExpr(Expr.Binary expr)
     {
-        Token operator = expr.operator;
-        Object first = evaluate(expr.first);
-        Object second = evaluate(expr.second);
+        double first = evaluate(expr.first);
+        double second = evaluate(expr.second);
 
-        validateNumberOperands(operator, first, second);
+        return apply(expr.operator, first, second);
+    }
 
+    /*
+     * Applies a binary operator to its evaluated operands.
+     * 
+     * @param operator The operator of the binary expression.
+     * @param first The value of the first operand.
+     * @param second The value of the second operand.
+     * @return The value of the binary expression.
+     */
+    private double apply(Token operator, double first, double second)
+    {
         switch (operator.type)
         {
             case PLUS:
-                return (double) first + (double) second;
+                return first + second;
             case MINUS:
-                return (double) first - (double) second;
+                return first - second;
             case STAR:
-                return (double) first * (double) second;
+                return first * second;
             case SLASH:
-                if ((double) second == 0)
+                if (second == 0)
                     throw new RuntimeError(operator, "Cannot divide by 0");
                 else
-                    return (double) first / (double) second;
+                    return first / second;
+            default:
+                throw new RuntimeError(operator, "Unknown binary operator");
         }
+    }
 
-        return null;
+    /*
+     * Evaluates a top-level expression, recording an EvaluateEvent
+     * for it if the Flight Recorder has been initialized. Loading an
+     * event class initializes much of the Flight Recorder, which takes
+     * longer than most programs take to run, so no event is created
+     * otherwise.
+     *
+     * @param expr A top-level expression.
+     * @return The value of the expression.
+     */
+    private double evaluateForm(Expr expr)
+    {
+        if (!FlightRecorder.isInitialized())
+            return evaluate(expr);
+
+        EvaluateEvent event = new EvaluateEvent();
+        event.begin();
+
+        try
+        {
+            return evaluate(expr);
+        }
+        finally
+        {
+            if (event.shouldCommit())
+            {
+                Token operator = null;
+                if (expr instanceof Expr.Binary)
+                    operator = ((Expr.Binary) expr).operator;
+                else if (expr instanceof Expr.Unary)
+                    operator = ((Expr.Unary) expr).operator;
+
+                if (operator != null)
+                {
+                    event.line = operator.line;
+                    event.column = operator.column;
+                }
+
+                event.height = expr.height;
+                event.commit();
+            }
+        }
     }
 
     /*
@@ -81,49 +460,236 @@ public class Interpreter implements Expr.Visitor<Object>
      * @param expr An expression.
      * @return The value of the expression.
      */
-    private Object evaluate(Expr expr)
+    private double evaluate(Expr expr)
     {
-        return expr.accept(this);
+        if (expr.height <= MAX_RECURSION_DEPTH)
+            return expr.accept(this);
+
+        // A shared expression remembers its value when it is
+        // evaluated by its accept method (see Expr.Shared), which
+        // a tall expression bypasses.
+        if (isEvaluated(expr))
+            return ((Expr.Shared) expr).value();
+
+        Expr[] operands = wideOperands(expr);
+        if (operands != null)
+            return remember(expr, reduce(((Expr.Binary) expr).operator, operands));
+
+        return evaluateIteratively(expr);
     }
 
-    private void validateNumberOperand(Token operator, Object right)
+    /*
+     * Evaluates the expression by traversing it in post-order
+     * with explicit stacks of expressions and values instead of
+     * recursion, so that its height is limited only by the size
+     * of the heap. Subexpressions that are short enough are
+     * still evaluated recursively.
+     * 
+     * @param root An expression.
+     * @return The value of the expression.
+     */
+    private double evaluateIteratively(Expr root)
     {
-        if (right instanceof Double) return;
-        throw new RuntimeError(operator, "Unary operator must evaluate to numbers.");
+        // The expressions to be visited. An expression is pushed
+        // once to visit its operands and, if it has operands, once
+        // more (marked as expanded) to apply its operator to them.
+        Expr[] exprs = new Expr[64];
+        boolean[] expanded = new boolean[64];
+        int exprCount = 0;
+
+        // The values of the expressions that have been evaluated.
+        double[] values = new double[64];
+        int valueCount = 0;
+
+        exprs[exprCount++] = root;
+
+        while (exprCount > 0)
+        {
+            Expr expr = exprs[--exprCount];
+            boolean isExpanded = expanded[exprCount];
+
+            if (exprCount + 3 > exprs.length)
+            {
+                exprs = Arrays.copyOf(exprs, exprs.length * 2);
+                expanded = Arrays.copyOf(expanded, expanded.length * 2);
+            }
+
+            if (valueCount + 1 > values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+
+            Expr[] operands = isExpanded ? null : wideOperands(expr);
+
+            if (operands != null)
+            {
+                Token operator = ((Expr.Binary) expr).operator;
+                values[valueCount++] = remember(expr, reduce(operator, operands));
+            }
+            else if (!isExpanded && expr.height <= MAX_RECURSION_DEPTH)
+            {
+                values[valueCount++] = expr.accept(this);
+            }
+            else if (!isExpanded && isEvaluated(expr))
+            {
+                values[valueCount++] = ((Expr.Shared) expr).value();
+            }
+            else if (expr instanceof Expr.Unary)
+            {
+                Expr.Unary unary = (Expr.Unary) expr;
+
+                if (isExpanded)
+                {
+                    if (unary.operator.type == TokenType.MINUS)
+                        values[valueCount - 1] = -values[valueCount - 1];
+
+                    remember(unary, values[valueCount - 1]);
+                }
+                else
+                {
+                    exprs[exprCount] = unary;
+                    expanded[exprCount++] = true;
+                    exprs[exprCount] = unary.right;
+                    expanded[exprCount++] = false;
+                }
+            }
+            else
+            {
+                Expr.Binary binary = (Expr.Binary) expr;
+
+                if (isExpanded)
+                {
+                    double second = values[--valueCount];
+                    double first = values[valueCount - 1];
+                    values[valueCount - 1] = remember(binary, 
+                        apply(binary.operator, first, second));
+                }
+                else
+                {
+                    // Push the second operand before the first, so
+                    // that the first operand is evaluated first.
+                    exprs[exprCount] = binary;
+                    expanded[exprCount++] = true;
+                    exprs[exprCount] = binary.second;
+                    expanded[exprCount++] = false;
+                    exprs[exprCount] = binary.first;
+                    expanded[exprCount++] = false;
+                }
+            }
+        }
+
+        return values[0];
     }
 
     /*
-     * Checks the type of the operands of the binary expression,
-     * ensuring that they are numbers.
+     * Indicates whether the expression is a shared expression
+     * whose value has been remembered.
      * 
-     * @param operator The operator of the binary expression.
-     * @param first The first operand of the binary expression.
-     * @param second The second operand of the binary expression.
+     * @param expr An expression.
+     * @return True if the value of the expression has been 
+     * remembered; False otherwise.
      */
-    private void validateNumberOperands(Token operator, 
-        Object first, Object second)
+    private static boolean isEvaluated(Expr expr)
     {
-        if (first instanceof Double && second instanceof Double) return;
-        throw new RuntimeError(operator, "Binary operators must evaluate to numbers.");
+        return expr instanceof Expr.Shared && ((Expr.Shared) expr).isEvaluated();
     }
 
     /*
-     * Converts a value of an expression to a string.
-     * @param obj An object representing the evaluated value.
-     * @return A string of the value.
+     * Remembers the value of the expression, if it is a shared
+     * expression.
+     * 
+     * @param expr An expression.
+     * @param value The value of the expression.
+     * @return The value.
+     */
+    private static double remember(Expr expr, double value)
+    {
+        if (expr instanceof Expr.Shared)
+            ((Expr.Shared) expr).remember(value);
+
+        return value;
+    }
+
+    /*
+     * If the expression is an addition or multiplication that is
+     * to be reduced in parallel, returns its operands. The Parser
+     * folds the operands of (+ a b c d) into (+ (+ (+ a b) c) d),
+     * so the operands are found by descending the first operands 
+     * for as long as they have the same operator. The type of the
+     * operator is compared rather than its token: an interned
+     * expression keeps the token of its first occurrence, which may
+     * be another form, so comparing tokens would end the operands
+     * at a different place with --intern than without it. A form 
+     * that is written as the first operand of a form of the same
+     * operator, as in (+ (+ a b) c), is thus reduced with it.
+     * 
+     * @param expr An expression.
+     * @return The operands of the expression, in the order of the
+     * source program, or null if it is not to be reduced in parallel.
      */
-    private String stringify(Object obj)
+    private Expr[] wideOperands(Expr expr)
     {
-        if (obj instanceof Double)
+        if (reductionPool == null || expr.height < MIN_REDUCTION_OPERANDS
+            || !(expr instanceof Expr.Binary))
+            return null;
+
+        Token operator = ((Expr.Binary) expr).operator;
+        if (operator.type != TokenType.PLUS && operator.type != TokenType.STAR)
+            return null;
+
+        int count = 1;
+        Expr first = expr;
+        while (first instanceof Expr.Binary 
+            && ((Expr.Binary) first).operator.type == operator.type)
         {
-            String text = obj.toString();
-            if (text.endsWith(".0"))
-            {
-                // Integer, so remove the trailing 0
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
+            first = ((Expr.Binary) first).first;
+            count++;
+        }
+
+        if (count < MIN_REDUCTION_OPERANDS) return null;
+
+        Expr[] operands = new Expr[count];
+        operands[0] = first;
+
+        Expr binary = expr;
+        for (int i = count - 1; i > 0; i--)
+        {
+            operands[i] = ((Expr.Binary) binary).second;
+            binary = ((Expr.Binary) binary).first;
         }
-        return obj.toString();
+
+        return operands;
+    }
+
+    /*
+     * Reduces the operands of a wide addition or multiplication
+     * in parallel.
+     * 
+     * @param operator The operator of the expression.
+     * @param operands The operands of the expression.
+     * @return The value of the expression.
+     */
+    private double reduce(Token operator, Expr[] operands)
+    {
+        Reduction reduction = reductionPool.invoke(new ReduceTask(
+            operator.type == TokenType.STAR, operands, 0, operands.length));
+
+        if (reduction.error != null) throw reduction.error;
+
+        // A compensation is meaningless once the sum overflows.
+        if (compensated && Double.isFinite(reduction.value))
+            return reduction.value + reduction.compensation;
+
+        return reduction.value;
+    }
+
+    /*
+     * Converts a value of an expression to a string. This is the 
+     * string of Double.toString, without the trailing ".0" of an 
+     * integer (see DoubleFormatter).
+     * @param value The evaluated value.
+     * @return A string of the value.
+     */
+    private String stringify(double value)
+    {
+        return DoubleFormatter.toString(value);
     }
 }
\ No newline at end of file
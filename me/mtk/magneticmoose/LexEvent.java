@@ -0,0 +1,29 @@
+package me.mtk.magneticmoose;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// A LexEvent is recorded by Java Flight Recorder for each pass of
+// the Lexer over the source program, that is, for each time that
+// it fills a TokenBuffer (see Lexer.fill). Events are only created
+// once the Flight Recorder has been initialized.
+@Name("me.mtk.magneticmoose.Lex")
+@Label("Lex")
+@Category("Magnetic Moose")
+@Description("Scanning a batch of tokens")
+@StackTrace(false)
+class LexEvent extends jdk.jfr.Event
+{
+    @Label("Line")
+    @Description("The line of the source program at which the batch starts")
+    int line;
+
+    @Label("Characters")
+    int characters;
+
+    @Label("Tokens")
+    int tokens;
+}
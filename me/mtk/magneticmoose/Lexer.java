@@ -1,67 +1,132 @@
 package me.mtk.magneticmoose;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import jdk.jfr.FlightRecorder;
+
 // The Lexer is the part of the interpreter that takes
 // a source program (written in the language that is
 // being interpreted) as input and outputs a sequence
-// of Token objects. These tokens will be used by the
+// of tokens. These tokens will be used by the
 // Parser to construct an abstract syntax tree (AST).
-public class Lexer
+//
+// The Lexer is also a TokenStream, so the Parser may pull
+// tokens from it in batches instead of waiting for the
+// entire source program to be scanned. The tokens are
+// appended to a TokenBuffer rather than created as objects.
+public class Lexer implements TokenStream
 {
-    
-    // Stores the begin index and end index
-    // of a line in source. That is, a line
-    // is a substring of source.
-    private class Line
-    {
-        private final int beginIndex;
-        private final int endIndex;
-
-        public Line(int beginIndex, int endIndex)
-        {
-            this.beginIndex = beginIndex;
-            this.endIndex = endIndex;
-        }
-    }
 
     // The source program, written in the language being interpreted.
-    private String source;
+    // This is either a String or, when scanning a file, a ByteSequence
+    // over the bytes of the file.
+    private final CharSequence source;
+
+    // Stores the index (in source) of the first character of
+    // each line that has been reached, starting with the first
+    // line that is scanned. A line ends at the next newline
+    // character, so only its start needs to be stored.
+    private int[] lineStarts = new int[16];
 
-    // Stores the accumulated tokens, which are to be given to the 
-    // Parser as input.
-    private List<Token> tokens = new ArrayList<>();
+    // The amount of lines that have been reached.
+    private int lineCount = 0;
 
-    // Stores the lines of source.
-    private List<Line> lines = new ArrayList<>();
+    // The index (in source) one past the last character to be
+    // scanned. This is the length of source unless the Lexer
+    // scans only a part of the source program.
+    private final int end;
+
+    // The number of the first line that is scanned.
+    private final int firstLineNumber;
+
+    // Indicates if the end of the source program has been
+    // reached, in which case the end-of-file token is all
+    // that remains to be scanned.
+    private boolean reachedEndOfFile = false;
+
+    // The buffer to which scanned tokens are appended.
+    private TokenBuffer buffer;
+
+    // The amount of tokens that have been scanned, and the time 
+    // (in nanoseconds) that was spent scanning them.
+    private long tokenCount = 0;
+    private long scanNanos = 0;
 
     // The line in source that is currently being processed.
-    private int currentLineNumber = 1;
+    private int currentLineNumber;
 
     // The current column of the line in source that is currently
     // being processed. This is reset whenever a new line
     // whitespace character is encountered.
-    private int currentColumnNumber = 0;
+    private int currentColumnNumber;
 
     // The index (in source) of the first character of the
     // lexeme currently being processed. This gets reset when
     // the Lexer begins constructing another Token.
     private int lexemeStart = 0;
 
-    // The index (in source) of the first character of the current line.
-    private int lineStart = 0;
+    // Indicates whether source is the bytes of a file in UTF-8, whose
+    // continuation bytes are not counted as columns (see ByteSequence).
+    private final boolean isUtf8;
 
     // The current position in the source string (an index in source).
     // This member can take on any value in the range [0, n - 1], where
     // n is the length of source. This is the index in source of the next
     // character that is to be processed. That is, the index of the character
     // that is currently being processed is one less than this value.
-    private int position = 0;
+    private int position;
 
-    public Lexer(String source)
+    public Lexer(CharSequence source)
+    {
+        this(source, 0, source.length(), 1, 0, 0);
+    }
+
+    /**
+     * Constructs a Lexer that scans only the part of source in the
+     * range [start, end), which must begin and end between tokens.
+     * The line and column numbers of its tokens are those of the
+     * entire source program, so several Lexers may scan different 
+     * parts of the same program (see FormIndex).
+     * 
+     * @param source The source program.
+     * @param start The index in source at which to start scanning.
+     * @param end The index in source at which to stop scanning.
+     * @param line The number of the line on which start lies.
+     * @param lineStart The index in source of the first character 
+     * of that line.
+     * @param column The amount of characters of that line before
+     * start (see ByteSequence.columns).
+     */
+    public Lexer(CharSequence source, int start, int end, int line, int lineStart,
+        int column)
     {
         this.source = source;
+        this.end = end;
+        this.isUtf8 = ByteSequence.IS_UTF_8 && source instanceof ByteSequence;
+        this.firstLineNumber = line;
+        this.currentLineNumber = line;
+        this.currentColumnNumber = column;
+        this.lexemeStart = start;
+        this.position = start;
+        addLine(lineStart);
+    }
+
+    /**
+     * Constructs a Lexer that scans the bytes of the provided
+     * buffer directly, treating each byte as an ASCII character
+     * but decoding the lines and lexemes that are shown to the 
+     * user with the platform charset (see ByteSequence).
+     * This allows a memory-mapped file to be scanned without
+     * building a String copy of its contents.
+     * 
+     * @param source A buffer containing the source program.
+     */
+    public Lexer(ByteBuffer source)
+    {
+        this(new ByteSequence(source));
     }
 
     /**
@@ -71,50 +136,193 @@ public class Lexer
      */
     public List<Token> getTokens()
     {
-        while (!isEndOfFile())
-        {
-            // We are at the beginning of the next lexeme
-            lexemeStart = position;
+        List<Token> tokens = new ArrayList<>();
+        TokenBuffer buffer = new TokenBuffer(source, 1024);
+        Token token;
 
-            scanToken();
-        }
+        do
+        {
+            buffer.clear();
+            fill(buffer);
 
-        // Add the last line
-        lines.add(new Line(lineStart, position));
+            for (int i = 0; i < buffer.size(); i++)
+                tokens.add(buffer.token(i));
 
-        // Append the end-of-file token to the list
-        tokens.add(new Token(TokenType.EOF, "", null,
-            currentLineNumber, ++currentColumnNumber));
+            token = tokens.get(tokens.size() - 1);
+        } 
+        while (token.type != TokenType.EOF);
         
         return tokens;
     }
 
+    @Override
+    public CharSequence getSource()
+    {
+        return source;
+    }
+
     /**
-     * Returns the nth line of source.
+     * Scans the source program for the next tokens, appending
+     * them to the buffer until it is full or the end-of-file 
+     * token has been appended.
+     * 
+     * @param buffer The buffer to which to append tokens.
+     */
+    @Override
+    public void fill(TokenBuffer buffer)
+    {
+        long start = System.nanoTime();
+        int size = buffer.size();
+
+        if (FlightRecorder.isInitialized())
+            recordScan(buffer);
+        else
+            scan(buffer);
+
+        tokenCount += buffer.size() - size;
+        scanNanos += System.nanoTime() - start;
+    }
+
+    /*
+     * Scans tokens into the buffer, recording a LexEvent for them.
+     * No event is created unless the Flight Recorder has been 
+     * initialized, as loading an event class would initialize it.
+     * 
+     * @param buffer The buffer.
+     */
+    private void recordScan(TokenBuffer buffer)
+    {
+        LexEvent event = new LexEvent();
+        event.begin();
+        int size = buffer.size();
+        int line = currentLineNumber;
+        int first = position;
+
+        scan(buffer);
+
+        if (event.shouldCommit())
+        {
+            event.line = line;
+            event.characters = position - first;
+            event.tokens = buffer.size() - size;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the amount of tokens that have been scanned.
+     * 
+     * @return The amount of tokens.
+     */
+    public long getTokenCount()
+    {
+        return tokenCount;
+    }
+
+    /**
+     * Returns the time that has been spent scanning.
+     * 
+     * @return The time in nanoseconds.
+     */
+    public long getScanNanos()
+    {
+        return scanNanos;
+    }
+
+    /*
+     * Scans the source program for the next tokens, appending
+     * them to the buffer until it is full or the end-of-file 
+     * token has been appended.
+     * 
+     * @param buffer The buffer to which to append tokens.
+     */
+    private void scan(TokenBuffer buffer)
+    {
+        this.buffer = buffer;
+
+        while (!buffer.isFull())
+        {
+            if (isEndOfFile())
+            {
+                if (!reachedEndOfFile)
+                {
+                    currentColumnNumber++;
+                    reachedEndOfFile = true;
+                }
+
+                buffer.add(TokenType.EOF, position, 0, 
+                    currentLineNumber, currentColumnNumber, 0);
+                return;
+            }
+
+            // We are at the beginning of the next lexeme
+            lexemeStart = position;
+            scanToken();
+        }
+    }
+
+    /**
+     * Returns the nth line of source. The line must have been
+     * reached by the Lexer, although it need not have been
+     * scanned to its end.
      * 
      * @param n A line number.
      * @return The nth line of the source program.
      */
     public String getLine(int n)
     {
-        int lineIndex = n - 1;
+        int lineIndex = n - firstLineNumber;
 
-        if (lineIndex < 0 || lineIndex > lines.size() - 1)
+        if (lineIndex < 0 || lineIndex > lineCount - 1)
         {
             throw new IllegalArgumentException("Argument n must be an integer " +
                 "in the range [0, m - 1], where m is the amount of " +
                 "lines in the source program");
         }
 
-        Line line = lines.get(lineIndex);
+        int beginIndex = lineStarts[lineIndex];
 
-        return source.substring(line.beginIndex, line.endIndex);
+        return source.subSequence(beginIndex, lineEnd(beginIndex)).toString();
+    }
+
+    /*
+     * Returns the index (in source) of the end of the line 
+     * that contains the provided index. The end may lie beyond 
+     * the part of source that is scanned.
+     * 
+     * @param index An index in source.
+     * @return The index of the newline character that ends the
+     * line, or the length of source if it is the last line.
+     */
+    private int lineEnd(int index)
+    {
+        int endIndex = index;
+        while (endIndex < source.length() && source.charAt(endIndex) != '\n')
+            endIndex++;
+        
+        return endIndex;
+    }
+
+    /*
+     * Records the start of a line that has been reached.
+     * 
+     * @param start The index (in source) of the first
+     * character of the line.
+     */
+    private void addLine(int start)
+    {
+        if (lineCount == lineStarts.length)
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+
+        lineStarts[lineCount++] = start;
     }
 
     /*
      * Starting at the current position in the source program,
-     * scans the source program for a Token with the help of
-     * lookahead characters.
+     * scans the source program for a token with the help of
+     * lookahead characters, appending it to the buffer.
+     * Whitespace and comments are skipped without 
+     * appending a token.
      */
     private void scanToken()
     {
@@ -123,13 +331,13 @@ public class Lexer
         switch (currentChar)
         {
             // Grouping characters
-            case '(': addToken(TokenType.LPAREN, null); break;
-            case ')': addToken(TokenType.RPAREN, null); break;
+            case '(': makeToken(TokenType.LPAREN); return;
+            case ')': makeToken(TokenType.RPAREN); return;
 
             // Binary arithmetic operators
-            case '+': addToken(TokenType.PLUS, null); break;
-            case '-': addToken(TokenType.MINUS, null); break;
-            case '*': addToken(TokenType.STAR, null); break;
+            case '+': makeToken(TokenType.PLUS); return;
+            case '-': makeToken(TokenType.MINUS); return;
+            case '*': makeToken(TokenType.STAR); return;
 
             // Comments and binary division operator
             case '/': 
@@ -138,8 +346,8 @@ public class Lexer
                 else if (match('*')) 
                     consumeBlockComment();
                 else 
-                    addToken(TokenType.SLASH, null);
-                break;
+                    makeToken(TokenType.SLASH);
+                return;
 
             default:
                 if (isDigit(currentChar))
@@ -150,9 +358,12 @@ public class Lexer
                 }
                 else
                 {
-                    addToken(TokenType.UNIDENTIFIED, null);
+                    // The lexeme is the whole character, not its first byte
+                    if (isUtf8)
+                        while (ByteSequence.isContinuationByte(peek())) nextChar();
+
+                    makeToken(TokenType.UNIDENTIFIED);
                 }
-                break;
         }
     }
 
@@ -168,12 +379,11 @@ public class Lexer
         
         if (nextChar == '\n')
         {
-            lines.add(new Line(lineStart, position - 1));
             currentLineNumber++;
             currentColumnNumber = 0;
-            lineStart = position;
+            addLine(position);
         }
-        else
+        else if (!isUtf8 || !ByteSequence.isContinuationByte(nextChar))
             currentColumnNumber++;
 
         return nextChar;
@@ -203,7 +413,7 @@ public class Lexer
      */
     private char peekNext()
     {
-        if (position + 1 >= source.length())
+        if (position + 1 >= end)
         {
             // There is no next character, so return 
             // the null character.
@@ -266,16 +476,30 @@ public class Lexer
 
     /*
      * Consumes a C-style block comment, silently advancing the position
-     * in the source program.
+     * in the source program. A comment that is not closed before the
+     * end of file is appended as a token, so that the Parser reports it.
      */
     private void consumeBlockComment()
     {
-        while (!match('*', '/')) nextChar();
+        // The "/*" that opens the comment has been consumed.
+        int line = currentLineNumber;
+        int column = currentColumnNumber - 1;
+
+        while (!match('*', '/'))
+        {
+            if (isEndOfFile())
+            {
+                makeToken(TokenType.UNTERMINATED_COMMENT, 0, line, column);
+                return;
+            }
+
+            nextChar();
+        }
     }
 
     /*
      * Handles the scanning of numbers, both integer
-     * and decimal. 
+     * and decimal, appending a number token.
      */
     private void number()
     {
@@ -297,8 +521,8 @@ public class Lexer
             while (isDigit(peek())) nextChar();
         }
 
-        double literal = Double.parseDouble(getLexeme());
-        addToken(TokenType.NUMBER, literal, currentLineNumber, startColumn);
+        double literal = NumberParser.parse(source, lexemeStart, position);
+        makeToken(TokenType.NUMBER, literal, currentLineNumber, startColumn);
     }
 
     /*
@@ -310,42 +534,32 @@ public class Lexer
      */
     private boolean isEndOfFile()
     {
-        return position >= source.length();
+        return position >= end;
     }
 
     /*
-     * Returns the current lexeme being processed.
-     *  
-     * @return The lexeme being processed.
-     */
-    private String getLexeme()
-    {
-        return source.substring(lexemeStart, position);
-    }
-
-    /*
-     * Adds a token to the accumulated list of tokens.
+     * Makes a token from the current lexeme, appending
+     * it to the buffer.
      * 
      * @param type The type of the token 
      * @param literal The literal value (if number)
      * @param line The line at which the token is located
      * @param column The starting column at which the token is located
      */
-    private void addToken(TokenType type, Object literal, int line, int column)
+    private void makeToken(TokenType type, double literal, int line, int column)
     {
-        Token token = new Token(type, getLexeme(), literal, line, column);
-        tokens.add(token);
+        buffer.add(type, lexemeStart, position - lexemeStart, line, column, literal);
     }
 
     /*
-     * Adds a token to the accumulated list of tokens.
+     * Makes a token from the current lexeme, appending
+     * it to the buffer.
      * 
      * @param type The type of the token 
-     * @param literal The literal value (if number)
      */
-    private void addToken(TokenType type, Object literal)
+    private void makeToken(TokenType type)
     {
-        addToken(type, literal, currentLineNumber, currentColumnNumber);
+        makeToken(type, 0, currentLineNumber, currentColumnNumber);
     }
 
     /*
@@ -1,115 +1,268 @@
 package me.mtk.magneticmoose;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
 
 public class MagneticMoose
 {
+    // The size of the smallest file that is mapped into memory
+    // rather than read.
+    private static final int MIN_MAPPED_SIZE = 1024 * 1024;
+
+    // The pool of threads on which top-level expressions are
+    // interpreted in parallel when running with --jobs N, where
+    // N > 1. Null if expressions are interpreted one at a time.
+    static ForkJoinPool pool;
 
-    // An instance of an interpreter. Is static final
-    // because it is to be reused to store programa state.
-    static final Interpreter interpreter = new Interpreter();
+    // The statistics of the work that has been done, which are
+    // printed when running with --stats.
+    static final Statistics stats = new Statistics();
 
-    // Indicates if there is a known error
-    // and prevents the execution of the code.
-    static boolean hadError = false;
+    // Indicates whether to print the statistics (--stats).
+    static boolean printStats = false;
 
-    // Indicates if a RuntimeError was thrown while
-    // the Interpreter was evaluating the program.
-    static boolean hadRuntimeError = false;
+    // The cache of the forms that have been run when running with
+    // --cache MB, which is shared by every Session. Null if forms
+    // are not cached.
+    static FormCache cache;
 
-    // Indicates whether the interpreter is running
-    // in interactive mode or non-interactive mode (with
-    // a file).
-    static boolean isInteractive = false;
+    // Indicates whether structurally equal subexpressions are shared
+    // and evaluated only once (--intern).
+    static boolean intern = false;
 
-    // The name of the file when running in 
-    // non-interactive mode.
-    static String filename;
+    // The engine that evaluates the top-level expressions (--engine).
+    static Engine engine = Engine.INTERPRETER;
 
     public static void main(String[] args) throws IOException
     {
-        if (args.length > 1) 
+        int argIndex = 0;
+
+        // The argument of the --reduce option, if any.
+        String reduction = null;
+
+        // The argument of the --daemon option, if any.
+        String address = null;
+
+        // The argument of the --jobs option, or 0 if there is none.
+        int jobs = 0;
+
+        // Indicates whether the arguments are files to run in a batch.
+        boolean isBatch = false;
+
+        // Indicates whether to run the script whenever it changes.
+        boolean isWatch = false;
+
+        while (argIndex < args.length && args[argIndex].startsWith("--"))
+        {
+            String option = args[argIndex++];
+
+            if (option.equals("--jobs") && argIndex < args.length)
+            {
+                jobs = parseJobs(args[argIndex++]);
+                if (jobs > 1) pool = new ForkJoinPool(jobs);
+            }
+            else if (option.equals("--reduce") && argIndex < args.length)
+                reduction = args[argIndex++];
+            else if (option.equals("--stats"))
+                printStats = true;
+            else if (option.equals("--daemon") && argIndex < args.length)
+                address = args[argIndex++];
+            else if (option.equals("--batch"))
+                isBatch = true;
+            else if (option.equals("--intern"))
+                intern = true;
+            else if (option.equals("--engine") && argIndex < args.length)
+            {
+                engine = Engine.named(args[argIndex++]);
+                if (engine == null) usage();
+            }
+            else if (option.equals("--watch"))
+                isWatch = true;
+            else if (option.equals("--cache") && argIndex < args.length)
+            {
+                cache = new FormCache(parseMegabytes(args[argIndex++]) * 1024 * 1024);
+                stats.setCache(cache);
+            }
+            else
+                usage();
+        }
+
+        if (reduction != null && !reduction.equals("parallel") 
+            && !reduction.equals("compensated"))
+            usage();
+
+        // Only the Interpreter reduces wide expressions in parallel,
+        // or evaluates a shared subexpression once.
+        if (engine != Engine.INTERPRETER && (reduction != null || intern))
+            usage();
+
+        // The Interpreter that runs every program. It holds no state 
+        // of a program (see Session), so one is shared by all of them.
+        // Wide expressions are reduced on the same pool as the 
+        // top-level expressions, if there is one.
+        final Interpreter interpreter = reduction == null ? new Interpreter()
+            : new Interpreter(pool != null ? pool : ForkJoinPool.commonPool(), 
+                reduction.equals("compensated"));
+
+        if (isBatch)
+        {
+            if (address != null || isWatch || argIndex == args.length) usage();
+
+            // The files are run in parallel on a pool of their own
+            // size, each one sequentially.
+            int threads = jobs > 0 ? jobs : Runtime.getRuntime().availableProcessors();
+            runBatch(interpreter, Arrays.asList(args).subList(argIndex, args.length), 
+                pool != null ? pool : new ForkJoinPool(threads));
+        }
+        else if (args.length - argIndex > 1 || address != null && args.length > argIndex) 
+        {
+            usage();
+        }
+        else if (isWatch)
+        {
+            if (address != null || argIndex == args.length) usage();
+            runWatch(interpreter, args[argIndex]);
+        }
+        else if (address != null)
         {
-            System.out.println("Usage: magneticmoose [script]");
-            System.exit(64);
+            runDaemon(interpreter, address);
         }
-        else if (args.length == 1)
+        else if (args.length - argIndex == 1)
         {
-            filename = args[0];
-            runFile(args[0]);
+            runFile(interpreter, args[argIndex]);
         }
         else
         {
-            isInteractive = true;
-            runPrompt();
+            runPrompt(interpreter);
         }
     }
 
-    /**
-     * Scans the source program for tokens,
-     * creates an AST from the tokens, and 
-     * executes the AST.
-     * 
-     * @param source A source program writtin in the
-     * language being interpreted.
+    /*
+     * Prints how to use the interpreter and exits.
      */
-    private static void run(String source)
+    private static void usage()
     {
-        Lexer lexer = new Lexer(source);
-        List<Token> tokens = lexer.getTokens();
+        System.out.println("Usage: magneticmoose [--jobs N] [--engine interpreter|compiler|vm|bytecode] " +
+            "[--reduce parallel|compensated] [--stats] [--cache MB] [--intern] " +
+            "[--daemon address | --batch path... | [--watch] script]");
+        System.exit(64);
+    }
 
-        // If the only token is EOF (no program), then don't try
-        // to parse and interpret.
-        if (tokens.size() != 1)
+    /*
+     * Parses the argument of the --jobs option, which must
+     * be a positive integer.
+     * 
+     * @param arg The argument.
+     * @return The amount of jobs.
+     */
+    private static int parseJobs(String arg)
+    {
+        try
         {
-            try
-            {
-                List<Expr> expressions = new Parser(tokens).parse();
-                List<String> values = interpreter.interpret(expressions);
+            int jobs = Integer.parseInt(arg);
+            if (jobs > 0) return jobs;
+        }
+        catch (NumberFormatException err)
+        {
+            // Fall through to the usage message
+        }
 
-                // Send the values of the expressions to stdout.
-                for(String value : values)
-                    System.out.println(value);
-            }
-            catch (ParseError err)
-            {
-                String line = lexer.getLine(err.getToken().line);
-                displayErrorMessage(err, line);
-                hadError = true;
-            }
-            catch (RuntimeError err)
-            {
-                String line = lexer.getLine(err.getToken().line);
-                displayErrorMessage(err, line);
-                hadRuntimeError = true;
-            }
+        usage();
+        return 1;
+    }
+
+    /*
+     * Parses the argument of the --cache option, which must
+     * be a positive integer.
+     * 
+     * @param arg The argument.
+     * @return The size of the cache in megabytes.
+     */
+    private static long parseMegabytes(String arg)
+    {
+        try
+        {
+            long megabytes = Long.parseLong(arg);
+            if (megabytes > 0) return megabytes;
+        }
+        catch (NumberFormatException err)
+        {
+            // Fall through to the usage message
         }
+
+        usage();
+        return 1;
     }
 
     /*
      * Reads and executes the file at the given path. 
      * 
+     * @param interpreter The Interpreter that runs the file.
      * @param path A path to a file.
      * @throws IOException 
      */
-    private static void runFile(String path) throws IOException
+    private static void runFile(Interpreter interpreter, String path) 
+        throws IOException
     {
-        // Read the input file and construct a String object
-        // from the contents.
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        String source = new String(bytes, Charset.defaultCharset());
+        Session session = consoleSession(interpreter);
+        session.filename = path;
+        session.run(read(path));
 
-		run(source);
+        if (printStats) stats.print(System.err);
 		
 		// Indicate an error in the exit code.
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        int status = session.exitCode();
+        if (status != 0) System.exit(status);
+    }
+
+    /**
+     * Reads the file at the given path, so that the Lexer can scan
+     * its bytes directly, without a String copy of the contents on
+     * the heap. A large file is mapped into memory rather than copied.
+     * A small one is read into an array, as the first mapping of a 
+     * file initializes more of the JDK than most scripts take to run.
+     * 
+     * @param path A path to a file.
+     * @return The contents of the file.
+     * @throws IOException
+     */
+    static ByteBuffer read(String path) throws IOException
+    {
+        long start = System.nanoTime();
+        ByteBuffer source;
+        try (FileChannel channel = FileChannel.open(Paths.get(path)))
+        {
+            long size = channel.size();
+
+            if (size < MIN_MAPPED_SIZE)
+            {
+                source = ByteBuffer.allocate((int) size);
+                while (source.hasRemaining())
+                    if (channel.read(source) < 0) break;
+                source.flip();
+            }
+            else
+            {
+                source = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        stats.read(source.limit(), System.nanoTime() - start);
+
+        return source;
     }
 
     /*
@@ -117,46 +270,112 @@ public class MagneticMoose
      * the user to type source language into the console
      * and execute it directly.
      * 
+     * @param interpreter The Interpreter that runs the source.
      * @throws IOException
      */
-    private static void runPrompt() throws IOException
+    private static void runPrompt(Interpreter interpreter) throws IOException
     {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
+        Session session = consoleSession(interpreter);
+        session.isInteractive = true;
+
+        // A session may be long, so its statistics may also
+        // be watched with JMX.
+        registerStatistics();
 
         while (true)
         {
             System.out.print("> ");               
-			run(reader.readLine());
-			hadError = false;
+            long start = System.nanoTime();
+            String line = reader.readLine();
+            stats.read(line.length(), System.nanoTime() - start);
+			session.run(new Lexer(line));
+			session.hadError = false;
+            if (printStats) stats.print(System.err);
         }
     }
 
-    private static void displayErrorMessage(String errorName, String message, String line, 
-        int lineNumber, int columnNumber)
+    /*
+     * Runs the interpreter as a daemon that runs the programs
+     * that clients send to it (see Daemon).
+     * 
+     * @param interpreter The Interpreter that runs the programs.
+     * @param address A port of localhost or the path of a Unix
+     * domain socket.
+     * @throws IOException
+     */
+    private static void runDaemon(Interpreter interpreter, String address) 
+        throws IOException
     {
-        if(isInteractive)
+        registerStatistics();
+        new Daemon(interpreter, engine, pool).serve(address);
+    }
+
+    /*
+     * Runs a file, and then runs what has changed whenever it
+     * changes (see Watch).
+     * 
+     * @param interpreter The Interpreter that runs the file.
+     * @param path A path to a file.
+     * @throws IOException
+     */
+    private static void runWatch(Interpreter interpreter, String path) 
+        throws IOException
+    {
+        registerStatistics();
+        new Watch(path, interpreter, engine, intern, System.out, System.err).watch();
+    }
+
+    /*
+     * Runs many files in a single JVM (see Batch) and exits with 
+     * a status that summarizes theirs.
+     * 
+     * @param interpreter The Interpreter that runs the files.
+     * @param args Files, directories, and lists of files.
+     * @param batchPool The pool of threads on which to run the files.
+     * @throws IOException
+     */
+    private static void runBatch(Interpreter interpreter, List<String> args, 
+        ForkJoinPool batchPool) 
+        throws IOException
+    {
+        registerStatistics();
+
+        List<Path> files = Batch.files(args);
+        OutputStream out = new BufferedOutputStream(
+            new FileOutputStream(FileDescriptor.out), 64 * 1024);
+        int status = new Batch(interpreter, engine, batchPool).run(files, out);
+
+        if (printStats) stats.print(System.err);
+        if (status != 0) System.exit(status);
+    }
+
+    /*
+     * Returns a Session that writes to the console.
+     */
+    private static Session consoleSession(Interpreter interpreter)
+    {
+        Session session = new Session(interpreter, pool, 
+            new FileOutputStream(FileDescriptor.out), System.out, System.err);
+        session.cache = cache;
+        session.intern = intern;
+        session.engine = engine;
+        return session;
+    }
+
+    /*
+     * Registers the statistics with the platform MBean server.
+     */
+    private static void registerStatistics()
+    {
+        try
         {
-            System.err.format("%s on column %d: %s\n", errorName, 
-                columnNumber, message);
+            stats.register();
         }
-        else
+        catch (JMException err)
         {
-            System.err.format("%s:%d:%d: %s: %s\n", filename, lineNumber, 
-                columnNumber, errorName, message);
+            System.err.println("Could not register statistics: " + err.getMessage());
         }
-        System.out.format("\t%s\n", line);
-        String columnPointer = "";
-        for(int i = 0; i < columnNumber - 1; i++)
-            columnPointer += " ";
-        columnPointer += "^";
-        System.out.format("\t%s\n", columnPointer);
-    }
-
-    private static void displayErrorMessage(InterpreterError err, String line)
-    {
-        Token token = err.getToken();
-        displayErrorMessage(err.getErrorName(), err.getMessage(), line,
-            token.line, token.column);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,249 @@
+package me.mtk.magneticmoose;
+
+import java.util.function.DoubleSupplier;
+
+// A Node is an expression that has been compiled (see Compiler)
+// into an object that knows how to evaluate itself. Unlike the
+// Interpreter, which dispatches through Expr.accept and switches
+// on the operator of every binary expression each time it is
+// evaluated, each operator is its own Node class, so evaluating
+// a Node requires no switch and the JIT sees a single receiver
+// type at most call sites. Nodes are immutable and may be
+// evaluated any number of times.
+//
+// An addition, subtraction, multiplication, or division of many
+// operands, such as (+ a b c ...), is a single Node that loops over
+// its operands rather than a chain of binary Nodes, and a Node that
+// would be too deep to be evaluated recursively evaluates its
+// expression with the Interpreter instead (see Compiler).
+abstract class Node implements DoubleSupplier
+{
+    static final class Constant extends Node
+    {
+        final double value;
+
+        public Constant(double value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            return value;
+        }
+    }
+
+    static final class Neg extends Node
+    {
+        final Node right;
+
+        public Neg(Node right)
+        {
+            this.right = right;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            return -right.getAsDouble();
+        }
+    }
+
+    static final class Add extends Node
+    {
+        final Node first;
+        final Node second;
+
+        public Add(Node first, Node second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            return first.getAsDouble() + second.getAsDouble();
+        }
+    }
+
+    static final class Sub extends Node
+    {
+        final Node first;
+        final Node second;
+
+        public Sub(Node first, Node second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            return first.getAsDouble() - second.getAsDouble();
+        }
+    }
+
+    static final class Mul extends Node
+    {
+        final Node first;
+        final Node second;
+
+        public Mul(Node first, Node second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            return first.getAsDouble() * second.getAsDouble();
+        }
+    }
+
+    static final class Div extends Node
+    {
+        // The operator token, which is kept only
+        // for reporting a division by zero.
+        final Token operator;
+        final Node first;
+        final Node second;
+
+        public Div(Token operator, Node first, Node second)
+        {
+            this.operator = operator;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            double dividend = first.getAsDouble();
+            double divisor = second.getAsDouble();
+
+            if (divisor == 0)
+                throw new RuntimeError(operator, "Cannot divide by 0");
+
+            return dividend / divisor;
+        }
+    }
+
+    static final class Sum extends Node
+    {
+        final Node[] operands;
+
+        public Sum(Node[] operands)
+        {
+            this.operands = operands;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            double sum = operands[0].getAsDouble();
+
+            for (int i = 1; i < operands.length; i++)
+                sum += operands[i].getAsDouble();
+
+            return sum;
+        }
+    }
+
+    static final class Difference extends Node
+    {
+        final Node[] operands;
+
+        public Difference(Node[] operands)
+        {
+            this.operands = operands;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            double difference = operands[0].getAsDouble();
+
+            for (int i = 1; i < operands.length; i++)
+                difference -= operands[i].getAsDouble();
+
+            return difference;
+        }
+    }
+
+    static final class Product extends Node
+    {
+        final Node[] operands;
+
+        public Product(Node[] operands)
+        {
+            this.operands = operands;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            double product = operands[0].getAsDouble();
+
+            for (int i = 1; i < operands.length; i++)
+                product *= operands[i].getAsDouble();
+
+            return product;
+        }
+    }
+
+    static final class Quotient extends Node
+    {
+        // The operator token, which is kept only
+        // for reporting a division by zero.
+        final Token operator;
+        final Node[] operands;
+
+        public Quotient(Token operator, Node[] operands)
+        {
+            this.operator = operator;
+            this.operands = operands;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            double quotient = operands[0].getAsDouble();
+
+            for (int i = 1; i < operands.length; i++)
+            {
+                double divisor = operands[i].getAsDouble();
+
+                if (divisor == 0)
+                    throw new RuntimeError(operator, "Cannot divide by 0");
+
+                quotient /= divisor;
+            }
+
+            return quotient;
+        }
+    }
+
+    // An expression that is evaluated by an Interpreter, which
+    // evaluates tall expressions without recursion.
+    static final class Interpreted extends Node
+    {
+        final Expr expr;
+        final Interpreter interpreter;
+
+        public Interpreted(Expr expr, Interpreter interpreter)
+        {
+            this.expr = expr;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public double getAsDouble()
+        {
+            return expr.accept(interpreter);
+        }
+    }
+}
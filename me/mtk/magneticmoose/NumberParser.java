@@ -0,0 +1,246 @@
+package me.mtk.magneticmoose;
+
+import java.math.BigInteger;
+
+// The NumberParser converts the lexeme of a number token to the
+// double that is nearest to it, exactly as Double.parseDouble
+// would, but without first copying the lexeme into a String.
+// Because a number has no sign, exponent, or other notation
+// (see the number production of the grammar), its digits can
+// be accumulated straight from the source program.
+//
+// The digits are accumulated into a long w, so that the number
+// is w * 10^q for some q <= 0. When w and 10^-q are both exactly
+// representable as doubles, a single division yields the correctly
+// rounded result (Clinger's fast path). Otherwise, the algorithm of
+// Eisel and Lemire multiplies w by a 128-bit approximation of 10^q,
+// which is sufficient to round correctly. Numbers with more than 19
+// significant digits, and numbers that are so small that they are
+// subnormal, are rare enough to be left to Double.parseDouble.
+final class NumberParser
+{
+    // The greatest power of ten that is exactly representable
+    // as a double.
+    private static final int MAX_EXACT_POWER = 22;
+
+    // The greatest integer such that it and all smaller
+    // integers are exactly representable as doubles.
+    private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+    // The greatest amount of decimal digits that always fit in a long
+    // (treated as unsigned).
+    private static final int MAX_DIGITS = 19;
+
+    // The powers of ten that are exactly representable as doubles.
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // The 128 most significant bits of 10^q for each q in
+    // [MIN_EXPONENT, 0], as pairs of the high and the low 64 bits.
+    // Each of them is computed when it is first needed, which is not
+    // at all if every number takes the fast path, and is published
+    // through the final fields of a Power (see DoubleFormatter).
+    private static class Powers
+    {
+        // The smallest q for which w * 10^q may not round to zero.
+        private static final int MIN_EXPONENT = -342;
+
+        private static final Power[] TABLE = new Power[1 - MIN_EXPONENT];
+
+        /*
+         * Returns the 128 most significant bits of a power of ten.
+         *
+         * @param q The exponent of the power.
+         * @return The bits of the power.
+         */
+        private static Power get(int q)
+        {
+            Power power = TABLE[q - MIN_EXPONENT];
+            if (power == null)
+                TABLE[q - MIN_EXPONENT] = power = compute(q);
+
+            return power;
+        }
+
+        /*
+         * Computes the bits of a power in the same way as the
+         * reference implementation of the algorithm of Eisel and
+         * Lemire (fast_float), whose correctness has been proven
+         * for its table. The 128 bits of 10^q are those of 5^q,
+         * because the powers of two are accounted for separately.
+         *
+         * @param q The exponent of the power.
+         * @return The bits of the power.
+         */
+        private static Power compute(int q)
+        {
+            BigInteger power = BigInteger.valueOf(5).pow(-q);
+            int bits = power.bitLength();
+
+            // Divide a power of two 2^k by 5^-q such that the
+            // quotient has at least 128 bits, then keep the 
+            // 128 most significant bits.
+            int k = q >= -27 ? bits + 127 : 2 * bits + 128;
+            BigInteger c = BigInteger.ONE.shiftLeft(k)
+                .divide(power).add(BigInteger.ONE);
+
+            if (q == 0)
+                c = BigInteger.ONE.shiftLeft(127);
+            else if (c.bitLength() > 128)
+                c = c.shiftRight(c.bitLength() - 128);
+
+            BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+            return new Power(c.shiftRight(64).longValue(), c.and(mask).longValue());
+        }
+    }
+
+    // The 128 most significant bits of a power of ten.
+    private static class Power
+    {
+        private final long high;
+        private final long low;
+
+        private Power(long high, long low)
+        {
+            this.high = high;
+            this.low = low;
+        }
+    }
+
+    private NumberParser() {}
+
+    /**
+     * Parses the number in source in the range [start, end).
+     *
+     * @param source The source program.
+     * @param start The index in source of the first digit.
+     * @param end The index in source one past the last digit.
+     * @return The double nearest to the number.
+     */
+    public static double parse(CharSequence source, int start, int end)
+    {
+        long w = 0;
+        int digits = 0;
+        int q = 0;
+        boolean isFraction = false;
+
+        for (int i = start; i < end; i++)
+        {
+            char c = source.charAt(i);
+
+            if (c == '.')
+            {
+                isFraction = true;
+                continue;
+            }
+
+            if (isFraction) q--;
+
+            // Leading zeros are not significant.
+            if (w == 0 && c == '0') continue;
+
+            if (++digits > MAX_DIGITS)
+                return slowPath(source, start, end);
+
+            w = w * 10 + (c - '0');
+        }
+
+        if (w >= 0 && w <= MAX_EXACT_INTEGER && q >= -MAX_EXACT_POWER)
+            return w / POWERS_OF_TEN[-q];
+
+        if (w == 0) return 0;
+
+        if (q < Powers.MIN_EXPONENT)
+            return slowPath(source, start, end);
+
+        long bits = eiselLemire(w, q);
+        if (bits < 0)
+            return slowPath(source, start, end);
+
+        return Double.longBitsToDouble(bits);
+    }
+
+    /*
+     * Computes the double nearest to w * 10^q with the algorithm
+     * of Eisel and Lemire.
+     *
+     * @param w A nonzero integer (unsigned).
+     * @param q An integer in [Powers.MIN_EXPONENT, 0].
+     * @return The bits of the double, or -1 if the double is subnormal.
+     */
+    private static long eiselLemire(long w, int q)
+    {
+        Power power = Powers.get(q);
+        long powerHigh = power.high;
+        long powerLow = power.low;
+
+        // Normalize w so that its most significant bit is set.
+        int leadingZeros = Long.numberOfLeadingZeros(w);
+        w <<= leadingZeros;
+
+        // Multiply w by the high bits of the power. If the bits
+        // of the product that determine the rounding might change
+        // when the low bits of the power are taken into account,
+        // take them into account.
+        long high = unsignedMultiplyHigh(w, powerHigh);
+        long low = w * powerHigh;
+
+        if ((high & 0x1FF) == 0x1FF)
+        {
+            long secondHigh = unsignedMultiplyHigh(w, powerLow);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) high++;
+        }
+
+        // Keep 54 bits of the product, one more than the
+        // precision of a double, for rounding.
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 9;
+        long mantissa = high >>> shift;
+        int exponent = (((152170 + 65536) * q) >> 16) + 63 + upperBit
+            - leadingZeros + 1023;
+
+        if (exponent <= 0) return -1;
+
+        // A product that lies exactly halfway between two doubles
+        // is rounded to the even one. This can only happen when
+        // 10^q is exact.
+        if (Long.compareUnsigned(low, 1) <= 0 && q >= -4
+            && (mantissa & 3) == 1 && (mantissa << shift) == high)
+        {
+            mantissa &= ~1L;
+        }
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+
+        if (mantissa >= (2L << 52))
+        {
+            mantissa = 1L << 52;
+            exponent++;
+        }
+
+        mantissa &= ~(1L << 52);
+
+        return mantissa | ((long) exponent << 52);
+    }
+
+    /*
+     * Returns the high 64 bits of the unsigned 128-bit
+     * product of a and b.
+     */
+    private static long unsignedMultiplyHigh(long a, long b)
+    {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    /*
+     * Parses the number with Double.parseDouble.
+     */
+    private static double slowPath(CharSequence source, int start, int end)
+    {
+        return Double.parseDouble(source.subSequence(start, end).toString());
+    }
+}
@@ -0,0 +1,111 @@
+package me.mtk.magneticmoose;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+// An OutputBuffer collects the lines of output of a program in an
+// array of bytes and writes them to an output stream in large blocks.
+// Printing each line with System.out.println would lock the stream,
+// encode the line, and flush the stream once per line, which for a
+// program with millions of top-level expressions takes longer than
+// interpreting them. Because the output is ASCII, each character is
+// written as a single byte.
+//
+// The lines are not written until the buffer is full or flush is
+// called, so the buffer must be flushed before anything else is
+// written to the same stream.
+class OutputBuffer
+{
+    // The size of the buffer in bytes.
+    private static final int CAPACITY = 64 * 1024;
+
+    // The bytes that end a line.
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    // The stream to which the output is written.
+    private final OutputStream out;
+
+    // The output that has not been written yet.
+    private final byte[] bytes = new byte[CAPACITY];
+
+    // Formats values straight into bytes.
+    private final DoubleFormatter formatter = new DoubleFormatter();
+
+    // The amount of bytes in the buffer.
+    private int size = 0;
+
+    /**
+     * Constructs an empty OutputBuffer.
+     * 
+     * @param out The stream to which the output is written. It 
+     * need not be buffered.
+     */
+    public OutputBuffer(OutputStream out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Prints a line of ASCII text.
+     * 
+     * @param line A line of text.
+     */
+    public void println(String line)
+    {
+        int length = line.length();
+
+        for (int i = 0; i < length; )
+        {
+            if (size == CAPACITY) flush();
+
+            int end = Math.min(length, i + CAPACITY - size);
+            while (i < end)
+                bytes[size++] = (byte) line.charAt(i++);
+        }
+
+        endLine();
+    }
+
+    /**
+     * Prints the value of an expression on a line, formatted 
+     * as by Interpreter.stringify.
+     * 
+     * @param value A value.
+     */
+    public void println(double value)
+    {
+        if (size + DoubleFormatter.MAX_LENGTH > CAPACITY) flush();
+
+        size = formatter.format(value, bytes, size);
+        endLine();
+    }
+
+    /**
+     * Writes the buffered output to the stream.
+     */
+    public void flush()
+    {
+        try
+        {
+            out.write(bytes, 0, size);
+            out.flush();
+            size = 0;
+        }
+        catch (IOException err)
+        {
+            throw new UncheckedIOException(err);
+        }
+    }
+
+    /*
+     * Ends the current line.
+     */
+    private void endLine()
+    {
+        if (size + LINE_SEPARATOR.length > CAPACITY) flush();
+
+        for (byte b : LINE_SEPARATOR)
+            bytes[size++] = b;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+package me.mtk.magneticmoose;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// A ParseEvent is recorded by Java Flight Recorder for each 
+// top-level expression that the Parser parses (see Parser.next).
+// Events are only created once the Flight Recorder has been
+// initialized.
+@Name("me.mtk.magneticmoose.Parse")
+@Label("Parse")
+@Category("Magnetic Moose")
+@Description("Parsing a top-level expression")
+@StackTrace(false)
+class ParseEvent extends jdk.jfr.Event
+{
+    @Label("Line")
+    @Description("The line of the source program at which the expression starts")
+    int line;
+
+    @Label("Column")
+    int column;
+
+    @Label("Nodes")
+    long nodes;
+}
@@ -1,7 +1,12 @@
 package me.mtk.magneticmoose;
 
 import java.util.List;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+
+import jdk.jfr.FlightRecorder;
 
 // The Parser is the part of the interpreter that takes
 // a list of Token objects as input and, from those tokens, 
@@ -13,28 +18,166 @@ import java.util.ArrayList;
 // 
 // The Parser is also responsible for reporting syntax errors
 // to the user.
+//
+// Tokens are pulled from a TokenStream as they are needed, so
+// the program may be parsed one top-level expression at a time
+// (see next()) without its tokens ever being held in a list.
+// They are pulled in batches into a TokenBuffer, from which the
+// type and literal of each token are read directly; a Token
+// object is created only for an operator, which is kept in the
+// AST, or for a token that is reported in a syntax error.
+//
+// The Parser may intern the nodes that it creates (see Interner),
+// so that the structurally equal subexpressions of the program are
+// shared rather than repeated, and are evaluated only once.
+//
+// Alternatively, the Parser may encode each top-level expression
+// straight into a Chunk (see nextChunk), which is executed by the
+// VirtualMachine, without creating its AST or any Token object at
+// all, so that an expression takes no more memory than its Chunk.
 public class Parser 
 {
+    // A binary expression whose opening parenthesis and operator
+    // have been consumed, but whose closing parenthesis has not.
+    private static class OpenBinary
+    {
+        private final Token operator;
+
+        // The unary operator that precedes the binary expression,
+        // or null if there is none.
+        private final Token unaryOperator;
+
+        // The first operand, and the expression of all operands
+        // that have been parsed so far.
+        private Expr first;
+        private Expr expr;
+
+        // The amount of operands that have been parsed so far.
+        private int operands = 0;
+
+        private OpenBinary(Token operator, Token unaryOperator)
+        {
+            this.operator = operator;
+            this.unaryOperator = unaryOperator;
+        }
+
+        /*
+         * Adds an operand to the binary expression. Operands
+         * after the second are folded from the left.
+         *
+         * @param operand The operand.
+         * @param interner The Interner of the nodes, or null.
+         */
+        private void add(Expr operand, Interner interner)
+        {
+            if (operands == 0)
+                first = operand;
+            else if (operands == 1)
+                expr = join(first, operand, interner);
+            else
+                expr = join(expr, operand, interner);
+
+            operands++;
+        }
+
+        /*
+         * Returns the expression, applying the preceding 
+         * unary operator, if any.
+         *
+         * @param interner The Interner of the nodes, or null.
+         * @return The expression.
+         */
+        private Expr close(Interner interner)
+        {
+            if (unaryOperator != null)
+                return unary(unaryOperator, expr, interner);
+
+            return expr;
+        }
+
+        /*
+         * Returns a new binary expression of the operator, or
+         * the interned one if the nodes are interned.
+         */
+        private Expr join(Expr first, Expr second, Interner interner)
+        {
+            if (interner != null)
+                return interner.binary(operator, first, second);
+
+            return new Expr.Binary(operator, first, second);
+        }
+    }
+
+    // The maximum amount of tokens that are pulled from
+    // the TokenStream at a time.
+    private static final int BUFFER_CAPACITY = 1024;
+
+    // The slots of a binary expression that is open while a Chunk is
+    // parsed (see chunk): the ordinal of the type of its operator, the
+    // line and column of its operator, the ordinal of the type of the
+    // unary operator that precedes it (or -1 if there is none), and the
+    // amount of operands that have been parsed so far.
+    private static final int OPEN_TYPE = 0;
+    private static final int OPEN_LINE = 1;
+    private static final int OPEN_COLUMN = 2;
+    private static final int OPEN_UNARY = 3;
+    private static final int OPEN_OPERANDS = 4;
+    private static final int OPEN_SLOTS = 5;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
     // The tokens of the source program. These come from
     // the Lexer.
-    private final List<Token> tokens;
+    private final TokenStream tokens;
 
-    // The current position in the token list (an index in tokens).
-    // This member can take on any value in the range [0, n - 1], where
-    // n is the size of tokens. This is the index in tokens of the next
-    // Token that is to be processed. That is, the index of the Token
-    // that is currently being processed is one less than this value.
+    // The tokens that have been pulled from the TokenStream 
+    // but not yet discarded.
+    private final TokenBuffer buffer;
+
+    // The index (in buffer) of the next token that is to be
+    // processed (one token of lookahead). The token that was
+    // most recently processed is the one before it.
     private int position = 0;
 
+    // The amount of top-level expressions, and of nodes of
+    // all expressions, that have been parsed.
+    private long formCount = 0;
+    private long nodeCount = 0;
+
+    // The Interner of the nodes, or null if they are not interned.
+    private final Interner interner;
+
+    // The ChunkCompiler that builds the Chunks of the expressions, and
+    // the binary expressions that are open, OPEN_SLOTS ints each, while
+    // a Chunk is parsed. Both are null until a Chunk is parsed.
+    private ChunkCompiler chunks;
+    private int[] open;
+
     /**
      * Constructs a new Parser object, initializing
-     * it with a list of tokens.
+     * it with a stream of tokens.
      * 
-     * @param tokens A list of tokens.
+     * @param tokens A stream of tokens.
      */
-    public Parser(List<Token> tokens)
+    public Parser(TokenStream tokens)
     {
+        this(tokens, false);
+    }
+
+    /**
+     * Constructs a new Parser object, initializing
+     * it with a stream of tokens.
+     * 
+     * @param tokens A stream of tokens.
+     * @param intern Whether structurally equal subexpressions
+     * are to be shared (see Interner).
+     */
+    public Parser(TokenStream tokens, boolean intern)
+    {
+        this.interner = intern ? new Interner() : null;
         this.tokens = tokens;
+        this.buffer = new TokenBuffer(tokens.getSource(), BUFFER_CAPACITY);
+        tokens.fill(buffer);
     }
 
     /**
@@ -47,6 +190,132 @@ public class Parser
         return program();
     }
 
+    /**
+     * Parses the next top-level expression of the program.
+     * 
+     * @return The next expression of the program or null 
+     * if there are no more expressions.
+     */
+    public Expr next() throws ParseError
+    {
+        if (hasTokens())
+        {
+            Expr expr = FlightRecorder.isInitialized() ? recordBinary() : binary();
+            formCount++;
+            return expr;
+        }
+        
+        return null;
+    }
+
+    /**
+     * Parses the next top-level expression of the program into
+     * a Chunk, without creating its AST (see ChunkCompiler).
+     * 
+     * @return The Chunk of the next expression of the program
+     * or null if there are no more expressions.
+     */
+    public Chunk nextChunk() throws ParseError
+    {
+        if (hasTokens())
+        {
+            if (chunks == null)
+            {
+                chunks = new ChunkCompiler();
+                open = new int[16 * OPEN_SLOTS];
+            }
+
+            Chunk chunk = FlightRecorder.isInitialized() ? recordChunk() : chunk();
+            formCount++;
+            return chunk;
+        }
+
+        return null;
+    }
+
+    /*
+     * Parses a top-level expression, recording a ParseEvent for it.
+     * No event is created unless the Flight Recorder has been 
+     * initialized, as loading an event class would initialize it.
+     *
+     * @return A binary expression.
+     */
+    private Expr recordBinary()
+    {
+        ParseEvent event = beginParseEvent();
+        Expr expr = binary();
+        commitParseEvent(event);
+        return expr;
+    }
+
+    /*
+     * Parses a top-level expression into a Chunk, recording
+     * a ParseEvent for it, as recordBinary does.
+     *
+     * @return The Chunk of a binary expression.
+     */
+    private Chunk recordChunk()
+    {
+        ParseEvent event = beginParseEvent();
+        Chunk chunk = chunk();
+        commitParseEvent(event);
+        return chunk;
+    }
+
+    /*
+     * Begins the ParseEvent of the top-level expression that
+     * starts at the next token.
+     *
+     * @return The event, whose nodes are the amount of nodes
+     * that were parsed before the expression.
+     */
+    private ParseEvent beginParseEvent()
+    {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        event.line = buffer.line(position);
+        event.column = buffer.column(position);
+        event.nodes = nodeCount;
+        return event;
+    }
+
+    /*
+     * Commits the ParseEvent of the top-level expression that
+     * has just been parsed, if it is to be committed.
+     *
+     * @param event The event from beginParseEvent.
+     */
+    private void commitParseEvent(ParseEvent event)
+    {
+        if (event.shouldCommit())
+        {
+            event.nodes = nodeCount - event.nodes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the amount of top-level expressions that
+     * have been parsed.
+     * 
+     * @return The amount of top-level expressions.
+     */
+    public long getFormCount()
+    {
+        return formCount;
+    }
+
+    /**
+     * Returns the amount of nodes of the expressions that
+     * have been parsed.
+     * 
+     * @return The amount of nodes.
+     */
+    public long getNodeCount()
+    {
+        return nodeCount;
+    }
+
     /*
      * Implements the following production rule:
      * program -> binary ;
@@ -56,100 +325,260 @@ public class Parser
     private List<Expr> program()
     {
         List<Expr> expressions = new ArrayList<>();
+        Expr expr;
         
-        while (hasTokens()) 
-            expressions.add(binary());
+        while ((expr = next()) != null) 
+            expressions.add(expr);
         
         return expressions;
     }
 
     /*
-     * Implements the following production rule:
+     * Implements the following production rules:
      * binary -> "(" ("+" | "-" | "*" | "/") unary (" " unary)+ ")" ;
+     * unary -> ("+" | "-")? (binary | number) ;
+     *
+     * Because binary and unary expressions may be nested in one 
+     * another to any depth, the binary expressions that have been
+     * opened but not yet closed are kept on an explicit stack
+     * instead of the call stack. This way, the depth of an 
+     * expression is limited only by the size of the heap.
      *
      * @return A binary expression.
      */
     private Expr binary()
+    {
+        Deque<OpenBinary> open = new ArrayDeque<>();
+        open.push(openBinary(null));
+
+        while (true)
+        {
+            OpenBinary binary = open.peek();
+
+            if (binary.operands >= 2 && !isNextTokenOperand())
+            {
+                closingParenthesis();
+                open.pop();
+
+                // The operands are joined by one node fewer than 
+                // there are operands, and a unary operator is a node.
+                nodeCount += binary.operands - 1;
+                if (binary.unaryOperator != null) nodeCount++;
+
+                Expr expr = binary.close(interner);
+                if (open.isEmpty()) return expr;
+                open.peek().add(expr, interner);
+            }
+            else if (match(TokenType.PLUS, TokenType.MINUS))
+            {
+                Token operator = previous();
+                if (peek(TokenType.LPAREN))
+                    // unary -> ("+" | "-")? binary
+                    open.push(openBinary(operator));
+                else
+                {
+                    // unary -> ("+" | "-")? number
+                    binary.add(unary(operator, number(), interner), interner);
+                    nodeCount++;
+                }
+            }
+            else if (peek(TokenType.LPAREN))
+            {
+                // unary -> binary;
+                open.push(openBinary(null));
+            }
+            else if (peek(TokenType.NUMBER))
+            {
+                // unary -> number;
+                binary.add(number(), interner);
+            }
+            else
+            {
+                throw operandError();
+            }
+        }
+    }
+
+    /*
+     * Implements the same production rules as binary, but encodes
+     * the expression into a Chunk as it is parsed instead of building
+     * its AST. Since the operands of a binary expression are folded
+     * from the left, the instruction of its operator is emitted after
+     * each of its operands but the first, and that of a unary minus
+     * after its operand, which is the postfix order of the Chunk.
+     *
+     * The binary expressions that have been opened but not yet closed
+     * are kept in the array open, OPEN_SLOTS ints each, the one that
+     * is being parsed last.
+     *
+     * @return The Chunk of a binary expression.
+     */
+    private Chunk chunk()
+    {
+        chunks.begin();
+        int top = openChunkBinary(0, -1);
+
+        while (true)
+        {
+            int operands = open[top + OPEN_OPERANDS];
+
+            if (operands >= 2 && !isNextTokenOperand())
+            {
+                closingParenthesis();
+
+                // The same nodes as binary counts
+                int unary = open[top + OPEN_UNARY];
+                nodeCount += operands - 1;
+                if (unary >= 0) nodeCount++;
+                if (unary == TokenType.MINUS.ordinal()) chunks.negate();
+
+                if (top == 0) return chunks.end();
+                top -= OPEN_SLOTS;
+                addChunkOperand(top);
+            }
+            else if (match(TokenType.PLUS, TokenType.MINUS))
+            {
+                TokenType operator = buffer.type(position - 1);
+                if (peek(TokenType.LPAREN))
+                    // unary -> ("+" | "-")? binary
+                    top = openChunkBinary(top + OPEN_SLOTS, operator.ordinal());
+                else
+                {
+                    // unary -> ("+" | "-")? number
+                    chunkNumber();
+                    if (operator == TokenType.MINUS) chunks.negate();
+                    nodeCount++;
+                    addChunkOperand(top);
+                }
+            }
+            else if (peek(TokenType.LPAREN))
+            {
+                // unary -> binary;
+                top = openChunkBinary(top + OPEN_SLOTS, -1);
+            }
+            else if (peek(TokenType.NUMBER))
+            {
+                // unary -> number;
+                chunkNumber();
+                addChunkOperand(top);
+            }
+            else
+            {
+                throw operandError();
+            }
+        }
+    }
+
+    /*
+     * Consumes the opening parenthesis and the operator of a binary
+     * expression of a Chunk, and opens it at the given index of open.
+     *
+     * @param top The index in open of the binary expression.
+     * @param unary The ordinal of the type of the unary operator
+     * that precedes the binary expression, or -1 if there is none.
+     * @return The index of the binary expression.
+     */
+    private int openChunkBinary(int top, int unary)
+    {
+        binaryOperator();
+
+        if (top == open.length)
+            open = Arrays.copyOf(open, 2 * open.length);
+
+        open[top + OPEN_TYPE] = buffer.type(position - 1).ordinal();
+        open[top + OPEN_LINE] = buffer.line(position - 1);
+        open[top + OPEN_COLUMN] = buffer.column(position - 1);
+        open[top + OPEN_UNARY] = unary;
+        open[top + OPEN_OPERANDS] = 0;
+
+        return top;
+    }
+
+    /*
+     * Adds an operand, whose instructions have just been emitted,
+     * to the open binary expression at the given index of open.
+     *
+     * @param top The index in open of the binary expression.
+     */
+    private void addChunkOperand(int top)
+    {
+        if (++open[top + OPEN_OPERANDS] >= 2)
+            chunks.operator(TYPES[open[top + OPEN_TYPE]], 
+                open[top + OPEN_LINE], open[top + OPEN_COLUMN]);
+    }
+
+    /*
+     * Consumes a number, as number does, and emits the 
+     * instruction that pushes it.
+     */
+    private void chunkNumber()
+    {
+        if (!match(TokenType.NUMBER)) throw numberError();
+
+        nodeCount++;
+        chunks.constant(buffer.literal(position - 1));
+    }
+
+    /*
+     * Consumes the opening parenthesis and the operator of
+     * a binary expression.
+     *
+     * @param unaryOperator The unary operator that precedes the
+     * binary expression, or null if there is none.
+     * @return The opened binary expression.
+     */
+    private OpenBinary openBinary(Token unaryOperator)
+    {
+        binaryOperator();
+        return new OpenBinary(previous(), unaryOperator);
+    }
+
+    /*
+     * Consumes the opening parenthesis and the operator of
+     * a binary expression.
+     */
+    private void binaryOperator()
     {
         if (match(TokenType.LPAREN))
         {
-            if (!isValidBinaryOperator(peek()))
+            if (!isValidBinaryOperator(peekType()))
             {
                 if (peek().lexeme == "")
                 {
-                    throw new ParseError(peek(), "Expected a binary " 
+                    throw error("Expected a binary " 
                     + "operator \"+\", \"-\", \"*\", or \"/\"");
                 }
                 else
                 {
-                    throw new ParseError(peek(), String.format("Expected a binary " 
+                    throw error(String.format("Expected a binary " 
                     + "operator \"+\", \"-\", \"*\", or \"/\" but got \"%s\" "
                     + "instead", peek().lexeme));
                 }
             }
             
-            Token operator = nextToken();
-
-            Expr first = unary();
-            Expr second = unary();
-            Expr expr = new Expr.Binary(operator, first, second);
-
-            while (peek(TokenType.LPAREN, TokenType.NUMBER, 
-                TokenType.MINUS, TokenType.PLUS))
-            {
-                second = unary();
-                expr = new Expr.Binary(operator, expr, second);
-            }
-            
-            String consumeMsg = String.format("Expected \")\" after " +
-            "expression but got \"%s\" instead", peek().lexeme);
-
-            if (peek().lexeme == "")
-                consumeMsg = String.format("Missing \")\" after expression");
-            
-            consume(TokenType.RPAREN, consumeMsg);
-            
-            return expr;
+            nextToken();
+            return;
         }
 
-        throw new ParseError(peek(), String.format("Expected an expression " +
+        throw error(String.format("Expected an expression " +
             "starting with \"(\" but got \"%s\" instead", peek().lexeme));
     }
 
-     /*
-     * Implements the following production rule:
-     * unary -> ("+" | "-")? (binary | number) ;
-     *
-     * @return A unary expression.
+    /*
+     * Consumes the closing parenthesis of a binary expression.
      */
-    private Expr unary()
+    private void closingParenthesis()
     {
-        if (match(TokenType.PLUS, TokenType.MINUS))
+        if (!match(TokenType.RPAREN))
         {
-            Token operator = previous();
-            Expr right;
-            if (peek(TokenType.LPAREN))
-                // unary -> ("+" | "-")? binary
-                right = binary();
-            else
-                // unary -> ("+" | "-")? number
-                right = number();
+            String consumeMsg = String.format("Expected \")\" after " +
+            "expression but got \"%s\" instead", peek().lexeme);
 
-            return new Expr.Unary(operator, right);
-        }
-        else if (peek(TokenType.LPAREN))
-        {
-            // unary -> binary;
-            return binary();
-        }
-        else if (peek(TokenType.NUMBER))
-        {
-            // unary -> number;
-            return number();
+            if (peek().lexeme == "")
+                consumeMsg = String.format("Missing \")\" after expression");
+
+            throw error(consumeMsg);
         }
-        
-        throw new ParseError(peek(), "Expected an expression starting " +
-            "with either \"(\", \"+\", \"-\", or a number");
     }
 
     /*
@@ -162,49 +591,95 @@ public class Parser
     {
         if (match(TokenType.NUMBER))
         {
-            return new Expr.Number((double) previous().literal);
+            nodeCount++;
+            double value = buffer.literal(position - 1);
+
+            if (interner != null)
+                return interner.number(value);
+
+            return new Expr.Number(value);
         }
 
-        throw new ParseError(peek(), String.format("Expected either a number " + 
+        throw numberError();
+    }
+
+    /*
+     * Creates the error for a next token that is not a number
+     * where a unary operator is to be followed by one.
+     *
+     * @return The error.
+     */
+    private ParseError numberError()
+    {
+        return error(String.format("Expected either a number " + 
             "or \"(\" to come after the unary operator " +
             "but got \"%s\" instead", peek().lexeme));
     }
 
     /*
-     * If the next token's type matches at least one 
-     * of the provided types, consume it and return true.
+     * Creates the error for a next token that does not
+     * begin an operand.
+     *
+     * @return The error.
+     */
+    private ParseError operandError()
+    {
+        return error("Expected an expression starting " +
+            "with either \"(\", \"+\", \"-\", or a number");
+    }
+
+    /*
+     * Returns a new unary expression, or the interned one if
+     * the nodes are interned.
+     *
+     * @param operator The unary operator.
+     * @param right The operand.
+     * @param interner The Interner of the nodes, or null.
+     * @return A unary expression.
+     */
+    private static Expr unary(Token operator, Expr right, Interner interner)
+    {
+        if (interner != null)
+            return interner.unary(operator, right);
+
+        return new Expr.Unary(operator, right);
+    }
+
+    /*
+     * If the next token's type matches the provided
+     * type, consume it and return true.
      *  
-     * @param types A variable number of token types.
+     * @param type A token type.
      * @return True if the token type of the next token
-     * matches at least one of the provided types; False
-     * otherwise.
+     * matches the provided type; False otherwise.
      */
-    private boolean match(TokenType... types)
+    private boolean match(TokenType type)
     {
-        for (TokenType type : types)
+        if (isNextTokenOfType(type))
         {
-            if (isNextTokenOfType(type))
-            {
-                nextToken();
-                return true;
-            }
+            nextToken();
+            return true;
         }
         return false;
     }
 
     /*
-     * Returns the next token if its type is of the provided type.
-     * 
-     * @param type The type of the token.
-     * @param msg The error message to display if the next token
-     * is not of the provided type.
-     * @return The next token
-     * @throws ParseError if next token is not of the provided type.
+     * If the next token's type matches either of the 
+     * provided types, consume it and return true.
+     *  
+     * @param a A token type.
+     * @param b Another token type.
+     * @return True if the token type of the next token
+     * matches either of the provided types; False otherwise.
      */
-    private Token consume(TokenType type, String msg)
+    private boolean match(TokenType a, TokenType b)
     {
-        if (isNextTokenOfType(type)) return nextToken();
-        throw new ParseError(peek(), msg);
+        if (isNextTokenOfType(a) || isNextTokenOfType(b))
+        {
+            nextToken();
+            return true;
+        }
+        return false;
     }
 
     /*
@@ -216,20 +691,41 @@ public class Parser
      */
     private boolean isNextTokenOfType(TokenType type)
     {
-        return peek().type == type;
+        return peekType() == type;
     }
 
     /*
-     * Gets the next token.
+     * Indicates if the next token may begin an operand, 
+     * that is, if it is "(", "+", "-", or a number.
      * 
-     * @return The next token.
+     * @return True if the next token may begin an operand;
+     * False otherwise.
      */
-    private Token nextToken()
+    private boolean isNextTokenOperand()
+    {
+        TokenType type = peekType();
+        return type == TokenType.LPAREN || type == TokenType.NUMBER ||
+            type == TokenType.MINUS || type == TokenType.PLUS;
+    }
+
+    /*
+     * Advances to the next token. When the buffer has been
+     * exhausted, the tokens before the current one are 
+     * discarded and the buffer is refilled.
+     */
+    private void nextToken()
     {
         if (hasTokens())
-            return tokens.get(position++);
-        else
-            return previous();
+        {
+            if (position + 1 == buffer.size())
+            {
+                buffer.discard(position);
+                tokens.fill(buffer);
+                position = 0;
+            }
+
+            position++;
+        }
     }
 
     /*
@@ -240,7 +736,7 @@ public class Parser
      */
     private boolean hasTokens()
     {
-        return peek().type != TokenType.EOF;
+        return peekType() != TokenType.EOF;
     }
 
     /*
@@ -250,24 +746,30 @@ public class Parser
      */
     private Token peek()
     {
-        return tokens.get(position);
+        return buffer.token(position);
     }
 
     /*
-     * Indicates whether the next token is one of 
-     * the provided token types.
+     * Returns the type of the next token.
+     * 
+     * @return The type of the next token.
+     */
+    private TokenType peekType()
+    {
+        return buffer.type(position);
+    }
+
+    /*
+     * Indicates whether the next token is of the 
+     * provided token type.
      *  
-     * @param types A variable number of token types.
-     * @return True if the next token is one of the provided
-     * token types; False otherwise.
+     * @param type A token type.
+     * @return True if the next token is of the provided
+     * token type; False otherwise.
      */
-    private boolean peek(TokenType... types)
+    private boolean peek(TokenType type)
     {
-        for (TokenType type : types)
-        {
-            if (isNextTokenOfType(type)) return true;
-        }
-        return false;
+        return isNextTokenOfType(type);
     }
 
     /*
@@ -277,13 +779,29 @@ public class Parser
      */
     private Token previous()
     {
-        return tokens.get(position - 1);
+        return buffer.token(position - 1);
+    }
+
+    /*
+     * Creates the error for an unexpected next token. If the next
+     * token is an unterminated block comment, it is reported as
+     * such, whatever was expected in its place.
+     * 
+     * @param message What was expected.
+     * @return The error.
+     */
+    private ParseError error(String message)
+    {
+        if (peekType() == TokenType.UNTERMINATED_COMMENT)
+            message = "Unterminated block comment";
+
+        return new ParseError(peek(), message);
     }
 
-    private boolean isValidBinaryOperator(Token operator)
+    private boolean isValidBinaryOperator(TokenType type)
     {
-        return (operator.type == TokenType.PLUS || operator.type == TokenType.MINUS ||
-            operator.type == TokenType.STAR || operator.type == TokenType.SLASH);
+        return (type == TokenType.PLUS || type == TokenType.MINUS ||
+            type == TokenType.STAR || type == TokenType.SLASH);
     }
 
 }
\ No newline at end of file
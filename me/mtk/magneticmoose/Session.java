@@ -0,0 +1,636 @@
+package me.mtk.magneticmoose;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.DoubleConsumer;
+
+// A Session runs source programs and writes their output and error
+// messages, keeping track of whether an error occurred. The command
+// line runs a single Session, whereas the daemon (see Daemon) runs a
+// Session for each request, so that whether one program had an
+// error, or what its file was named, has no effect on another that
+// is run at the same time.
+class Session
+{
+    // The amount of top-level expressions that are parsed
+    // before they are interpreted.
+    private static final int BATCH_SIZE = 4096;
+
+    // The approximate amount of characters of a source file that
+    // are lexed and parsed by a single task when running in parallel.
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // The Interpreter, which has no mutable state of its own, so
+    // it may be shared by Sessions.
+    private final Interpreter interpreter;
+
+    // The pool of threads on which top-level expressions are
+    // interpreted in parallel, or null if expressions are
+    // interpreted one at a time.
+    private final ForkJoinPool pool;
+
+    // The values of the top-level expressions, which are
+    // written in large blocks.
+    private final OutputBuffer out;
+
+    // The stream to which the line and column of an error are
+    // pointed out.
+    private final PrintStream console;
+
+    // The stream to which error messages are written.
+    private final PrintStream errors;
+
+    // The values of the batch of top-level expressions that is
+    // being interpreted.
+    private final Results results = new Results();
+
+    // Indicates if there is a known error
+    // and prevents the execution of the code.
+    boolean hadError = false;
+
+    // Indicates if a RuntimeError was thrown while
+    // the Interpreter was evaluating the program.
+    boolean hadRuntimeError = false;
+
+    // Indicates whether the interpreter is running
+    // in interactive mode or non-interactive mode (with
+    // a file).
+    boolean isInteractive = false;
+
+    // The name of the file when running in
+    // non-interactive mode.
+    String filename;
+
+    // The cache of the forms that have been run, or null
+    // if forms are not cached.
+    FormCache cache;
+
+    // Indicates whether structurally equal subexpressions
+    // are shared and evaluated only once (see Interner).
+    boolean intern = false;
+
+    // The engine that evaluates the top-level expressions.
+    Engine engine = Engine.INTERPRETER;
+
+    // The values of a batch of top-level expressions, which are
+    // collected while the batch is evaluated and printed afterwards,
+    // so that the time spent in each can be measured.
+    private static class Results implements DoubleConsumer
+    {
+        private double[] values = new double[BATCH_SIZE];
+        private int size = 0;
+
+        @Override
+        public void accept(double value)
+        {
+            if (size == values.length)
+                values = Arrays.copyOf(values, 2 * size);
+
+            values[size++] = value;
+        }
+    }
+
+    // Where the form of a segment of a source program (see FormIndex)
+    // starts: its line and column, and the index in the source program
+    // of the first character of its line.
+    private static class FormPosition
+    {
+        private final int line;
+        private final int column;
+        private final int lineStart;
+
+        private FormPosition(CharSequence source, FormIndex forms, int i)
+        {
+            int start = forms.formStart(source, i);
+            int line = forms.line(i);
+
+            for (int j = forms.start(i); j < start; j++)
+                if (source.charAt(j) == '\n') line++;
+
+            int lineStart = start;
+            while (lineStart > 0 && source.charAt(lineStart - 1) != '\n')
+                lineStart--;
+
+            this.line = line;
+            this.column = ByteSequence.columns(source, lineStart, start) + 1;
+            this.lineStart = lineStart;
+        }
+    }
+
+    // The top-level expressions of a chunk of a source file, which
+    // were lexed and parsed by a single task.
+    private static class ParsedChunk
+    {
+        private final Lexer lexer;
+        private final Forms expressions;
+
+        // The error that ended the parsing of the chunk, if any.
+        private ParseError error;
+
+        private ParsedChunk(Lexer lexer, Forms expressions)
+        {
+            this.lexer = lexer;
+            this.expressions = expressions;
+        }
+    }
+
+    /**
+     * Constructs a new Session.
+     *
+     * @param interpreter The Interpreter.
+     * @param pool The pool of threads on which to interpret top-level
+     * expressions in parallel, or null to interpret them one at a time.
+     * @param output The stream to which the values of the top-level
+     * expressions are written. It need not be buffered.
+     * @param console The stream to which the line and column of an
+     * error are pointed out.
+     * @param errors The stream to which error messages are written.
+     */
+    Session(Interpreter interpreter, ForkJoinPool pool, OutputStream output,
+        PrintStream console, PrintStream errors)
+    {
+        this.interpreter = interpreter;
+        this.pool = pool;
+        this.out = new OutputBuffer(output);
+        this.console = console;
+        this.errors = errors;
+    }
+
+    /**
+     * Runs a source program, with the forms cached if there is a
+     * cache, or else in parallel if there is a pool of threads,
+     * and writes any output that remains buffered.
+     *
+     * @param source The bytes of a source program.
+     */
+    void run(ByteBuffer source)
+    {
+        try
+        {
+            if (cache != null)
+                runCached(new ByteSequence(source));
+            else if (pool != null)
+                runInParallel(new ByteSequence(source));
+            else
+                run(new Lexer(source));
+        }
+        finally
+        {
+            out.flush();
+        }
+    }
+
+    /**
+     * Scans the source program for tokens,
+     * creates an AST (or a Chunk) from the
+     * tokens, and executes it.
+     *
+     * The top-level expressions are parsed and interpreted in
+     * batches, so that only a batch of the program is held in
+     * memory. When running with --jobs N, each batch is interpreted
+     * in parallel, unless it is run by the VirtualMachine. Either way, the output, including which error
+     * (if any) is reported, is the same as if the expressions were
+     * interpreted one at a time.
+     *
+     * @param lexer A Lexer over a source program written
+     * in the language being interpreted.
+     */
+    void run(Lexer lexer)
+    {
+        long start = System.nanoTime();
+        Parser parser = new Parser(lexer, intern);
+        long parseNanos = System.nanoTime() - start;
+
+        try
+        {
+            Forms batch = engine.forms(interpreter);
+            boolean more;
+
+            do
+            {
+                start = System.nanoTime();
+
+                try
+                {
+                    do more = batch.parse(parser);
+                    while (more && batch.size() < BATCH_SIZE);
+                }
+                catch (ParseError err)
+                {
+                    // The expressions before the error are interpreted
+                    // first, as they may throw a RuntimeError of their own.
+                    parseNanos += System.nanoTime() - start;
+                    interpret(batch);
+                    throw err;
+                }
+
+                parseNanos += System.nanoTime() - start;
+                interpret(batch);
+                batch.clear();
+            }
+            while (more);
+        }
+        catch (InterpreterError err)
+        {
+            reportError(err, lexer);
+        }
+        finally
+        {
+            MagneticMoose.stats.lexed(lexer);
+            MagneticMoose.stats.parsed(parser, parseNanos);
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns the status with which the command line exits after
+     * running the programs of this Session.
+     *
+     * @return 65 if there was a ParseError, 70 if there was a
+     * RuntimeError, and 0 otherwise.
+     */
+    int exitCode()
+    {
+        if (hadError) return 65;
+        if (hadRuntimeError) return 70;
+        return 0;
+    }
+
+    /*
+     * Interprets a batch of top-level expressions, in parallel if
+     * there is a pool of threads, and prints their values. If an
+     * expression throws a RuntimeError, the values of the expressions
+     * before it are printed before the error is thrown.
+     *
+     * @param batch The expressions to interpret.
+     */
+    private void interpret(Forms batch)
+    {
+        results.size = 0;
+        long start = System.nanoTime();
+
+        try
+        {
+            batch.evaluate(pool, results);
+        }
+        finally
+        {
+            long evaluated = System.nanoTime();
+            MagneticMoose.stats.evaluated(evaluated - start);
+
+            for (int i = 0; i < results.size; i++)
+                out.println(results.values[i]);
+
+            MagneticMoose.stats.printed(results.size, System.nanoTime() - evaluated);
+        }
+    }
+
+    /*
+     * Runs the source program with its top-level expressions lexed,
+     * parsed, and interpreted in parallel. The program is divided
+     * into chunks of whole top-level expressions (see FormIndex),
+     * which are lexed and parsed by tasks on the pool a few chunks
+     * ahead of the chunk that is being interpreted. The output,
+     * including which error (if any) is reported, is the same as if
+     * the expressions were interpreted one at a time.
+     *
+     * @param source A source program.
+     */
+    private void runInParallel(CharSequence source)
+    {
+        FormIndex forms = new FormIndex(source);
+        Deque<ForkJoinTask<ParsedChunk>> tasks = new ArrayDeque<>();
+
+        // The index of the next segment of the FormIndex to be parsed.
+        int next = 0;
+
+        while (next < forms.size() || !tasks.isEmpty())
+        {
+            while (next < forms.size() && tasks.size() < 2 * pool.getParallelism())
+            {
+                final int first = next;
+                do next++;
+                while (next < forms.size()
+                    && forms.end(next) - forms.start(first) <= CHUNK_SIZE);
+                final int last = next;
+
+                tasks.add(pool.submit(() -> parse(source, forms, first, last, intern,
+                    engine.forms(interpreter))));
+            }
+
+            ParsedChunk chunk = tasks.poll().join();
+
+            try
+            {
+                interpret(chunk.expressions);
+                if (chunk.error != null) throw chunk.error;
+            }
+            catch (InterpreterError err)
+            {
+                for (ForkJoinTask<ParsedChunk> task : tasks)
+                    task.cancel(false);
+
+                reportError(err, chunk.lexer);
+                return;
+            }
+        }
+    }
+
+    /*
+     * Runs the source program one form at a time (see FormIndex),
+     * printing the cached value of each form that has been run
+     * before instead of parsing and interpreting it again, or 
+     * reporting its cached error where the form is now. The forms
+     * that have not been run before are run as usual in runs of 
+     * consecutive forms.
+     *
+     * @param source A source program.
+     */
+    private void runCached(CharSequence source)
+    {
+        FormIndex forms = new FormIndex(source);
+
+        // The texts of the consecutive forms that are to be run,
+        // starting with the form of the segment first, or null
+        // for the forms that are too short to be cached.
+        List<String> pending = new ArrayList<>();
+        int first = 0;
+
+        // The amount of values that were printed from the cache.
+        long cached = 0;
+
+        try
+        {
+            for (int i = 0; i < forms.size(); i++)
+            {
+                int start = forms.formStart(source, i);
+                int end = forms.end(i);
+                String form = null;
+                FormCache.Entry entry = null;
+
+                if (end - start >= FormCache.MIN_LENGTH)
+                {
+                    form = source.subSequence(start, end).toString();
+                    entry = cache.get(form);
+                }
+
+                if (entry != null)
+                {
+                    if (!pending.isEmpty() && !runForms(source, forms, first, pending))
+                        return;
+
+                    if (entry.error != null)
+                    {
+                        reportCachedError(entry.error, source, forms, i);
+                        return;
+                    }
+
+                    out.println(entry.value);
+                    cached++;
+                    continue;
+                }
+
+                if (pending.isEmpty()) first = i;
+                pending.add(form);
+
+                if (pending.size() == BATCH_SIZE && !runForms(source, forms, first, pending))
+                    return;
+            }
+
+            if (!pending.isEmpty()) runForms(source, forms, first, pending);
+        }
+        finally
+        {
+            MagneticMoose.stats.printed(cached, 0);
+        }
+    }
+
+    /*
+     * Runs the segments of the source program that hold the given
+     * forms, caches the forms, and clears the list of forms.
+     *
+     * @param source A source program.
+     * @param forms The FormIndex of the source program.
+     * @param first The index of the first segment.
+     * @param pending The texts of the forms of the segments.
+     * @return False if an error was reported; True otherwise.
+     */
+    private boolean runForms(CharSequence source, FormIndex forms, int first, 
+        List<String> pending)
+    {
+        long start = System.nanoTime();
+        Lexer lexer = forms.lexer(source, first, first + pending.size());
+        Parser parser = new Parser(lexer, intern);
+        Forms expressions = engine.forms(interpreter);
+
+        try
+        {
+            try
+            {
+                while (expressions.parse(parser));
+            }
+            catch (ParseError err)
+            {
+                // The forms before the error are run first, as
+                // they may throw a RuntimeError of their own.
+                interpretAndCache(expressions, source, forms, first, pending);
+                throw err;
+            }
+            finally
+            {
+                MagneticMoose.stats.lexed(lexer);
+                MagneticMoose.stats.parsed(parser, System.nanoTime() - start);
+            }
+
+            interpretAndCache(expressions, source, forms, first, pending);
+            pending.clear();
+            return true;
+        }
+        catch (InterpreterError err)
+        {
+            reportError(err, lexer);
+            return false;
+        }
+    }
+
+    /*
+     * Interprets and prints a batch of top-level expressions, as
+     * interpret does, and caches each expression that was evaluated,
+     * along with its value or its error.
+     *
+     * @param expressions The expressions of the forms.
+     * @param source A source program.
+     * @param forms The FormIndex of the source program.
+     * @param first The index of the segment of the first expression.
+     * @param texts The texts of the forms, the first of which is
+     * that of the first expression, or null for a form that is not
+     * to be cached.
+     */
+    private void interpretAndCache(Forms expressions, CharSequence source,
+        FormIndex forms, int first, List<String> texts)
+    {
+        try
+        {
+            interpret(expressions);
+        }
+        catch (RuntimeError err)
+        {
+            String text = texts.get(results.size);
+            if (text != null)
+            {
+                // The error is kept relative to its form, which
+                // may be elsewhere when it is run again.
+                FormPosition form = new FormPosition(source, forms, 
+                    first + results.size);
+                Token token = err.getToken();
+                int line = token.line - form.line;
+                int column = line == 0 ? token.column - form.column : token.column;
+
+                cache.put(text, 0, new RuntimeError(new Token(token.type, 
+                    token.lexeme, null, line, column), err.getMessage()));
+            }
+            throw err;
+        }
+        finally
+        {
+            for (int i = 0; i < results.size; i++)
+            {
+                String text = texts.get(i);
+                if (text != null)
+                    cache.put(text, results.values[i], null);
+            }
+        }
+    }
+
+    /*
+     * Reports the cached error of the form of a segment where
+     * the form is now.
+     *
+     * @param cached The error, positioned relative to its form
+     * (see FormCache.Entry).
+     * @param source A source program.
+     * @param forms The FormIndex of the source program.
+     * @param i The index of the segment.
+     */
+    private void reportCachedError(RuntimeError cached, CharSequence source,
+        FormIndex forms, int i)
+    {
+        FormPosition form = new FormPosition(source, forms, i);
+        Token token = cached.getToken();
+        int column = token.line == 0 ? form.column + token.column : token.column;
+
+        // The line of the error, which follows that of the form
+        int start = form.lineStart;
+        for (int line = 0; line < token.line; line++)
+            while (source.charAt(start++) != '\n');
+
+        int end = start;
+        while (end < source.length() && source.charAt(end) != '\n') end++;
+
+        RuntimeError err = new RuntimeError(new Token(token.type, token.lexeme,
+            null, form.line + token.line, column), cached.getMessage());
+        reportError(err, source.subSequence(start, end).toString());
+    }
+
+    /*
+     * Lexes and parses the segments of the source program in
+     * the range [first, last).
+     *
+     * @param source A source program.
+     * @param forms The FormIndex of the source program.
+     * @param first The index of the first segment.
+     * @param last One past the index of the last segment.
+     * @param intern Whether to share structurally equal subexpressions.
+     * @param expressions The empty Forms into which to parse.
+     * @return The top-level expressions of the segments.
+     */
+    private static ParsedChunk parse(CharSequence source, FormIndex forms,
+        int first, int last, boolean intern, Forms expressions)
+    {
+        long start = System.nanoTime();
+        ParsedChunk chunk = new ParsedChunk(forms.lexer(source, first, last),
+            expressions);
+        Parser parser = new Parser(chunk.lexer, intern);
+
+        try
+        {
+            while (expressions.parse(parser));
+        }
+        catch (ParseError err)
+        {
+            chunk.error = err;
+        }
+
+        MagneticMoose.stats.lexed(chunk.lexer);
+        MagneticMoose.stats.parsed(parser, System.nanoTime() - start);
+
+        return chunk;
+    }
+
+    private void displayErrorMessage(String errorName, String message, String line,
+        int lineNumber, int columnNumber)
+    {
+        if(isInteractive)
+        {
+            errors.format("%s on column %d: %s\n", errorName,
+                columnNumber, message);
+        }
+        else
+        {
+            errors.format("%s:%d:%d: %s: %s\n", filename, lineNumber,
+                columnNumber, errorName, message);
+        }
+        console.format("\t%s\n", line);
+        String columnPointer = " ".repeat(Math.max(0, columnNumber - 1)) + "^";
+        console.format("\t%s\n", columnPointer);
+    }
+
+    /*
+     * Displays the error message of an error and records that
+     * an error occurred.
+     *
+     * @param err An error.
+     * @param lexer The Lexer that scanned the line of the error.
+     */
+    private void reportError(InterpreterError err, Lexer lexer)
+    {
+        reportError(err, lexer.getLine(err.getToken().line));
+    }
+
+    /*
+     * Displays the error message of an error and records that
+     * an error occurred.
+     *
+     * @param err An error.
+     * @param line The text of the line of the error.
+     */
+    private void reportError(InterpreterError err, String line)
+    {
+        // The values of the expressions before the error
+        // are printed before the error.
+        out.flush();
+        MagneticMoose.stats.failed(err);
+
+        displayErrorMessage(err, line);
+
+        if (err instanceof RuntimeError)
+            hadRuntimeError = true;
+        else
+            hadError = true;
+    }
+
+    private void displayErrorMessage(InterpreterError err, String line)
+    {
+        Token token = err.getToken();
+        displayErrorMessage(err.getErrorName(), err.getMessage(), line,
+            token.line, token.column);
+    }
+}
@@ -0,0 +1,277 @@
+package me.mtk.magneticmoose;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Statistics counts the work that the interpreter has done and the
+// time that it has spent in each of its phases: reading the source
+// program, lexing, parsing, evaluating, and printing. The counters
+// are LongAdders, so that the tasks that lex, parse, and evaluate
+// in parallel may update them without contending with each other.
+// They are updated once per batch of work rather than once per 
+// token or expression, so they cost next to nothing and are always
+// kept.
+//
+// The Parser pulls tokens from the Lexer while it parses, so the 
+// time that is measured for parsing includes the time spent lexing,
+// which is measured by the Lexer and subtracted (see getParseNanos).
+// A large source file is mapped into memory rather than read, so
+// most of the time spent reading it is spent lexing (as pages of the
+// file are first touched).
+public class Statistics implements StatisticsMBean
+{
+    // The name under which the statistics are registered
+    // with the platform MBean server.
+    private static final String OBJECT_NAME = "me.mtk.magneticmoose:type=Statistics";
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder forms = new LongAdder();
+    private final LongAdder results = new LongAdder();
+    private final LongAdder parseErrors = new LongAdder();
+    private final LongAdder runtimeErrors = new LongAdder();
+
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder lexNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder evaluateNanos = new LongAdder();
+    private final LongAdder printNanos = new LongAdder();
+
+    // The cache of forms, whose own counters are reported
+    // along with these, or null if forms are not cached.
+    private volatile FormCache cache;
+
+    /**
+     * Registers the statistics with the platform MBean server.
+     * 
+     * @throws JMException If the statistics could not be registered.
+     */
+    public void register() throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer()
+            .registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Reports the counters of a cache of forms along with
+     * the statistics.
+     * 
+     * @param cache The cache.
+     */
+    public void setCache(FormCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Records that a source program was read.
+     * 
+     * @param bytes The size of the source program.
+     * @param nanos The time spent reading it.
+     */
+    public void read(long bytes, long nanos)
+    {
+        bytesRead.add(bytes);
+        readNanos.add(nanos);
+    }
+
+    /**
+     * Records the tokens that a Lexer has scanned.
+     * 
+     * @param lexer A Lexer that will scan no more tokens.
+     */
+    public void lexed(Lexer lexer)
+    {
+        tokens.add(lexer.getTokenCount());
+        lexNanos.add(lexer.getScanNanos());
+    }
+
+    /**
+     * Records the expressions that a Parser has parsed.
+     * 
+     * @param parser A Parser that will parse no more expressions.
+     * @param nanos The time spent parsing them, including the
+     * time spent lexing.
+     */
+    public void parsed(Parser parser, long nanos)
+    {
+        forms.add(parser.getFormCount());
+        nodes.add(parser.getNodeCount());
+        parseNanos.add(nanos);
+    }
+
+    /**
+     * Records the time spent evaluating expressions.
+     * 
+     * @param nanos The time.
+     */
+    public void evaluated(long nanos)
+    {
+        evaluateNanos.add(nanos);
+    }
+
+    /**
+     * Records that values were printed.
+     * 
+     * @param count The amount of values.
+     * @param nanos The time spent printing them.
+     */
+    public void printed(long count, long nanos)
+    {
+        results.add(count);
+        printNanos.add(nanos);
+    }
+
+    /**
+     * Records that an error was reported.
+     * 
+     * @param err The error.
+     */
+    public void failed(InterpreterError err)
+    {
+        if (err instanceof RuntimeError)
+            runtimeErrors.increment();
+        else
+            parseErrors.increment();
+    }
+
+    /**
+     * Prints the statistics, one per line.
+     * 
+     * @param stream The stream to which to print them.
+     */
+    public void print(PrintStream stream)
+    {
+        stream.format("bytes read      %d%n", getBytesRead());
+        stream.format("tokens          %d%n", getTokens());
+        stream.format("nodes           %d%n", getNodes());
+        stream.format("forms           %d%n", getForms());
+        stream.format("results         %d%n", getResults());
+        stream.format("parse errors    %d%n", getParseErrors());
+        stream.format("runtime errors  %d%n", getRuntimeErrors());
+        stream.format("read            %.3f ms%n", getReadNanos() / 1e6);
+        stream.format("lex             %.3f ms%n", getLexNanos() / 1e6);
+        stream.format("parse           %.3f ms%n", getParseNanos() / 1e6);
+        stream.format("evaluate        %.3f ms%n", getEvaluateNanos() / 1e6);
+        stream.format("print           %.3f ms%n", getPrintNanos() / 1e6);
+
+        if (cache != null)
+        {
+            stream.format("cache hits      %d%n", getCacheHits());
+            stream.format("cache misses    %d%n", getCacheMisses());
+            stream.format("cache evictions %d%n", getCacheEvictions());
+            stream.format("cache bytes     %d%n", getCacheBytes());
+        }
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getTokens()
+    {
+        return tokens.sum();
+    }
+
+    @Override
+    public long getNodes()
+    {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getForms()
+    {
+        return forms.sum();
+    }
+
+    @Override
+    public long getResults()
+    {
+        return results.sum();
+    }
+
+    @Override
+    public long getParseErrors()
+    {
+        return parseErrors.sum();
+    }
+
+    @Override
+    public long getRuntimeErrors()
+    {
+        return runtimeErrors.sum();
+    }
+
+    @Override
+    public long getReadNanos()
+    {
+        return readNanos.sum();
+    }
+
+    @Override
+    public long getLexNanos()
+    {
+        return lexNanos.sum();
+    }
+
+    /**
+     * Returns the time spent parsing, excluding the time
+     * spent lexing.
+     * 
+     * @return The time in nanoseconds.
+     */
+    @Override
+    public long getParseNanos()
+    {
+        return Math.max(0, parseNanos.sum() - lexNanos.sum());
+    }
+
+    @Override
+    public long getEvaluateNanos()
+    {
+        return evaluateNanos.sum();
+    }
+
+    @Override
+    public long getPrintNanos()
+    {
+        return printNanos.sum();
+    }
+
+    @Override
+    public long getCacheHits()
+    {
+        FormCache cache = this.cache;
+        return cache != null ? cache.getHits() : 0;
+    }
+
+    @Override
+    public long getCacheMisses()
+    {
+        FormCache cache = this.cache;
+        return cache != null ? cache.getMisses() : 0;
+    }
+
+    @Override
+    public long getCacheEvictions()
+    {
+        FormCache cache = this.cache;
+        return cache != null ? cache.getEvictions() : 0;
+    }
+
+    @Override
+    public long getCacheBytes()
+    {
+        FormCache cache = this.cache;
+        return cache != null ? cache.getWeight() : 0;
+    }
+}
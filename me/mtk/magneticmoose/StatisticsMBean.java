@@ -0,0 +1,24 @@
+package me.mtk.magneticmoose;
+
+// The management interface of Statistics, through which the
+// statistics of a running interpreter may be read with JMX
+// (for example, with JConsole).
+public interface StatisticsMBean
+{
+    long getBytesRead();
+    long getTokens();
+    long getNodes();
+    long getForms();
+    long getResults();
+    long getParseErrors();
+    long getRuntimeErrors();
+    long getReadNanos();
+    long getLexNanos();
+    long getParseNanos();
+    long getEvaluateNanos();
+    long getPrintNanos();
+    long getCacheHits();
+    long getCacheMisses();
+    long getCacheEvictions();
+    long getCacheBytes();
+}
\ No newline at end of file
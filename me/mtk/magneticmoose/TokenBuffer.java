@@ -0,0 +1,154 @@
+package me.mtk.magneticmoose;
+
+// A TokenBuffer holds a sequence of tokens as parallel arrays of
+// primitives (a structure of arrays), rather than as Token objects. 
+// The lexeme of a token is not copied out of the source program;
+// only its position in the source program is kept. The Parser reads
+// the type and literal of each token straight from the arrays, so 
+// a Token object is created only for a token that is kept in the
+// abstract syntax tree (an operator) or that is reported in an error.
+//
+// A TokenBuffer has a fixed capacity. The Lexer fills it with the
+// tokens that follow those that are already in it, and the Parser
+// discards the tokens that it no longer needs to make room for more.
+class TokenBuffer
+{
+    // The types of token, indexed by ordinal.
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // The source program that the tokens were scanned from.
+    private final CharSequence source;
+
+    // The ordinal of the type of each token.
+    private final byte[] types;
+
+    // The index in source of the first character of, and the 
+    // length of, the lexeme of each token.
+    private final int[] starts;
+    private final int[] lengths;
+
+    // The line and column at which each token is located.
+    private final int[] lines;
+    private final int[] columns;
+
+    // The literal value of each number token.
+    private final double[] literals;
+
+    // The amount of tokens in the buffer.
+    private int size = 0;
+
+    /**
+     * Constructs an empty TokenBuffer.
+     * 
+     * @param source The source program that the tokens are scanned from.
+     * @param capacity The maximum amount of tokens in the buffer.
+     */
+    public TokenBuffer(CharSequence source, int capacity)
+    {
+        this.source = source;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.columns = new int[capacity];
+        this.literals = new double[capacity];
+    }
+
+    /**
+     * Appends a token to the buffer.
+     * 
+     * @param type The type of the token.
+     * @param start The index in source of the first character of its lexeme.
+     * @param length The length of its lexeme.
+     * @param line The line at which the token is located.
+     * @param column The starting column at which the token is located.
+     * @param literal The literal value (if number).
+     */
+    public void add(TokenType type, int start, int length, int line, int column,
+        double literal)
+    {
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        literals[size] = literal;
+        size++;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isFull()
+    {
+        return size == types.length;
+    }
+
+    public TokenType type(int i)
+    {
+        return TYPES[types[i]];
+    }
+
+    public double literal(int i)
+    {
+        return literals[i];
+    }
+
+    public int line(int i)
+    {
+        return lines[i];
+    }
+
+    public int column(int i)
+    {
+        return columns[i];
+    }
+
+    /**
+     * Creates a Token object of the ith token.
+     * 
+     * @param i The index of a token in the buffer.
+     * @return The token.
+     */
+    public Token token(int i)
+    {
+        TokenType type = type(i);
+
+        if (type == TokenType.EOF)
+            return new Token(type, "", null, lines[i], columns[i]);
+
+        String lexeme = source.subSequence(starts[i], starts[i] + lengths[i])
+            .toString();
+        Object literal = type == TokenType.NUMBER ? literals[i] : null;
+
+        return new Token(type, lexeme, literal, lines[i], columns[i]);
+    }
+
+    /**
+     * Discards the tokens before the ith token, moving the
+     * remaining tokens to the front of the buffer.
+     * 
+     * @param i The index of the first token to keep.
+     */
+    public void discard(int i)
+    {
+        int remaining = size - i;
+        System.arraycopy(types, i, types, 0, remaining);
+        System.arraycopy(starts, i, starts, 0, remaining);
+        System.arraycopy(lengths, i, lengths, 0, remaining);
+        System.arraycopy(lines, i, lines, 0, remaining);
+        System.arraycopy(columns, i, columns, 0, remaining);
+        System.arraycopy(literals, i, literals, 0, remaining);
+        size = remaining;
+    }
+
+    /**
+     * Discards all of the tokens.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+}
\ No newline at end of file
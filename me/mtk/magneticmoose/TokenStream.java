@@ -0,0 +1,27 @@
+package me.mtk.magneticmoose;
+
+// A TokenStream supplies tokens to the Parser in batches, in
+// the order in which they appear in the source program. This
+// allows a program to be parsed while it is being scanned,
+// rather than after all of its tokens have been collected.
+interface TokenStream
+{
+    /**
+     * Returns the source program from which the tokens 
+     * are scanned.
+     * 
+     * @return The source program.
+     */
+    CharSequence getSource();
+
+    /**
+     * Appends the next tokens of the source program to the 
+     * buffer until either the buffer is full or the end-of-file
+     * token, which is the last token of every stream, has been
+     * appended. Once the end of the source program has been
+     * reached, every call appends the end-of-file token.
+     * 
+     * @param buffer The buffer to which to append tokens.
+     */
+    void fill(TokenBuffer buffer);
+}
\ No newline at end of file
@@ -17,6 +17,9 @@ enum TokenType
     // Unidentified token,
     UNIDENTIFIED,
 
+    // A block comment that is not closed before the end of file
+    UNTERMINATED_COMMENT,
+
     // End of file token
     EOF
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package me.mtk.magneticmoose;
+
+// The VirtualMachine executes a Chunk, the compact postfix 
+// encoding of an expression (see ChunkCompiler). It is a 
+// stack machine: each instruction pops its operands from, and
+// pushes its result onto, a stack of doubles. The stack is 
+// reused from one Chunk to the next, so executing a Chunk does
+// not allocate. A VirtualMachine must therefore not be shared 
+// between threads.
+public class VirtualMachine
+{
+    // The stack of values.
+    private double[] stack = new double[64];
+
+    /**
+     * Executes the given Chunk.
+     * 
+     * @param chunk A Chunk to execute.
+     * @return The value of the expression of the Chunk.
+     * @throws RuntimeError if the expression divides by 0.
+     */
+    public double execute(Chunk chunk) throws RuntimeError
+    {
+        if (chunk.maxStack > stack.length)
+            stack = new double[chunk.maxStack];
+
+        byte[] code = chunk.code;
+        double[] constants = chunk.constants;
+        double[] stack = this.stack;
+
+        // The index of the next free slot of the stack, the
+        // next constant, and the next division operator.
+        int top = 0;
+        int constant = 0;
+        int division = 0;
+
+        for (int pc = 0; pc < code.length; pc++)
+        {
+            switch (code[pc])
+            {
+                case Chunk.OP_CONSTANT:
+                    stack[top++] = constants[constant++];
+                    break;
+                case Chunk.OP_NEGATE:
+                    stack[top - 1] = -stack[top - 1];
+                    break;
+                case Chunk.OP_ADD:
+                    top--;
+                    stack[top - 1] += stack[top];
+                    break;
+                case Chunk.OP_SUBTRACT:
+                    top--;
+                    stack[top - 1] -= stack[top];
+                    break;
+                case Chunk.OP_MULTIPLY:
+                    top--;
+                    stack[top - 1] *= stack[top];
+                    break;
+                case Chunk.OP_DIVIDE:
+                    top--;
+                    if (stack[top] == 0)
+                        throw divisionByZero(chunk, division);
+                    stack[top - 1] /= stack[top];
+                    division++;
+                    break;
+            }
+        }
+
+        return stack[0];
+    }
+
+    /*
+     * Creates the error for a division by zero, recreating the
+     * token of the division operator from its position.
+     * 
+     * @param chunk The Chunk being executed.
+     * @param division The index of the division operator.
+     * @return The error.
+     */
+    private RuntimeError divisionByZero(Chunk chunk, int division)
+    {
+        int line = chunk.positions[2 * division];
+        int column = chunk.positions[2 * division + 1];
+        Token operator = new Token(TokenType.SLASH, "/", null, line, column);
+
+        return new RuntimeError(operator, "Cannot divide by 0");
+    }
+}
\ No newline at end of file
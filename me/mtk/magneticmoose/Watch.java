@@ -0,0 +1,487 @@
+package me.mtk.magneticmoose;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// A Watch runs a source file and then runs it again whenever it
+// changes, until the process is terminated. Rather than running the
+// entire file again, it runs only the top-level expressions (forms)
+// whose text has changed, and prints only their results.
+//
+// The forms of the previous run are kept along with where they are
+// in the file and what they evaluated to. When the file changes, the
+// forms at its beginning and its end that are the same as before are
+// found by comparing their bytes, so that only the region in between,
+// which holds the edits, is lexed and parsed. A form in that region
+// whose text is that of a form of the region before is not run either,
+// as the value of a form depends on nothing but its text.
+//
+// Every form is run, even after a form that has an error, as forms
+// do not depend on one another. The values are printed along with
+// the number of the line on which their forms start:
+//
+//     program.in:3: 42
+//
+// An error is remembered relative to the line and the column of its
+// form, so that where it is is still correct after the form is moved,
+// and the line of the error is read from the file each time that it
+// is shown. After each run, a line that summarizes it is written to
+// the error stream.
+class Watch
+{
+    // How long to wait, after the file changes, for more changes.
+    // Editors often save a file in several steps, such as by
+    // truncating it and then writing it, or by replacing it.
+    private static final long SETTLE_MILLIS = 50;
+
+    // The result of a form.
+    private static class Result
+    {
+        // The value of the form, or null if it has an error.
+        private final String value;
+
+        // The error of the form, or null if it has none.
+        private final InterpreterError error;
+
+        // The line of the error, relative to that of the form, and
+        // its column, relative to that of the form if the error is
+        // on the line on which the form starts.
+        private final int lineOffset;
+        private final int columnOffset;
+
+        private Result(String value, InterpreterError error, int lineOffset,
+            int columnOffset)
+        {
+            this.value = value;
+            this.error = error;
+            this.lineOffset = lineOffset;
+            this.columnOffset = columnOffset;
+        }
+    }
+
+    // A form of the file.
+    private static class Form
+    {
+        // The index in the file of the first character of the
+        // form and one past its last.
+        private final int start;
+        private final int end;
+
+        // The number of the line on which the form starts.
+        private final int line;
+
+        // The result of the form, or null if it has not been run.
+        private Result result;
+
+        private Form(int start, int end, int line)
+        {
+            this.start = start;
+            this.end = end;
+            this.line = line;
+        }
+    }
+
+    private final Interpreter interpreter;
+
+    // The engine that evaluates the forms.
+    private final Engine engine;
+
+    // Indicates whether structurally equal subexpressions
+    // are shared and evaluated only once (see Interner).
+    private final boolean intern;
+
+    // The stream to which the values of the forms are written and
+    // the line and column of an error are pointed out.
+    private final PrintStream console;
+
+    // The stream to which error messages are written.
+    private final PrintStream errors;
+
+    // The name of the file, for the messages.
+    private final String filename;
+
+    // The contents of the file when it was last run, or null if it
+    // has not been run, and its forms.
+    private byte[] source = null;
+    private Form[] forms = new Form[0];
+
+    /**
+     * Constructs a new Watch.
+     *
+     * @param filename The path of the file to watch.
+     * @param interpreter The Interpreter that runs the forms.
+     * @param engine The engine that evaluates the forms.
+     * @param intern Whether structurally equal subexpressions are
+     * shared and evaluated only once (see Interner).
+     * @param console The stream to which the values of the forms
+     * are written and the line and column of an error are pointed out.
+     * @param errors The stream to which error messages are written.
+     */
+    Watch(String filename, Interpreter interpreter, Engine engine, 
+        boolean intern, PrintStream console, PrintStream errors)
+    {
+        this.filename = filename;
+        this.interpreter = interpreter;
+        this.engine = engine;
+        this.intern = intern;
+        this.console = console;
+        this.errors = errors;
+    }
+
+    /**
+     * Runs a file, and then runs what has changed whenever it
+     * changes, until the process is terminated.
+     *
+     * @throws IOException If the directory of the file cannot
+     * be watched.
+     */
+    void watch() throws IOException
+    {
+        Path file = Path.of(filename).toAbsolutePath();
+        Path name = file.getFileName();
+
+        try (WatchService service = file.getFileSystem().newWatchService())
+        {
+            // A file cannot be watched itself, only its directory.
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+            update(file);
+
+            while (true)
+            {
+                WatchKey key = service.take();
+                boolean changed = false;
+
+                do
+                {
+                    for (WatchEvent<?> event : key.pollEvents())
+                    {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || name.equals(event.context()))
+                            changed = true;
+                    }
+
+                    key.reset();
+                }
+                while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                if (changed) update(file);
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException err)
+        {
+            // The process is being terminated
+        }
+    }
+
+    /**
+     * Runs the forms of the file that have changed since it was last
+     * run, unless the file is the same or does not exist at the moment.
+     *
+     * @param file The path of the file.
+     */
+    void update(Path file)
+    {
+        byte[] bytes;
+        long start = System.nanoTime();
+
+        try
+        {
+            bytes = Files.readAllBytes(file);
+        }
+        catch (NoSuchFileException err)
+        {
+            // The file is being replaced, and will be read once
+            // it has been
+            return;
+        }
+        catch (IOException err)
+        {
+            errors.println("Could not read " + filename + ": " + err);
+            return;
+        }
+
+        MagneticMoose.stats.read(bytes.length, System.nanoTime() - start);
+        if (Arrays.equals(bytes, source)) return;
+
+        CharSequence text = new ByteSequence(ByteBuffer.wrap(bytes));
+        FormIndex index = new FormIndex(text);
+        Form[] updated = forms(text, index);
+
+        // The forms at the beginning and the end that are unchanged.
+        int limit = Math.min(updated.length, forms.length);
+        int prefix = 0;
+        while (prefix < limit && same(bytes, updated[prefix], forms[prefix]))
+        {
+            updated[prefix].result = forms[prefix].result;
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < limit - prefix && same(bytes, updated[updated.length - 1 - suffix],
+            forms[forms.length - 1 - suffix]))
+        {
+            updated[updated.length - 1 - suffix].result =
+                forms[forms.length - 1 - suffix].result;
+            suffix++;
+        }
+
+        // The results of the forms that were edited, moved, or removed.
+        Map<String, Result> previous = new HashMap<>();
+        for (int i = prefix; i < forms.length - suffix; i++)
+            previous.put(text(source, forms[i]), forms[i].result);
+
+        int ran = 0;
+        int first = -1;
+
+        for (int i = prefix; i <= updated.length - suffix; i++)
+        {
+            Result result = i < updated.length - suffix && !previous.isEmpty()
+                ? previous.get(text(bytes, updated[i])) : null;
+
+            if (result != null || i == updated.length - suffix)
+            {
+                if (first >= 0)
+                {
+                    run(bytes, text, index, updated, first, i);
+                    ran += i - first;
+                    first = -1;
+                }
+
+                if (result != null) updated[i].result = result;
+            }
+            else if (first < 0)
+                first = i;
+        }
+
+        source = bytes;
+        forms = updated;
+        summarize(ran);
+    }
+
+    /*
+     * Returns the forms of a source program, without their results.
+     *
+     * @param text The source program.
+     * @param index The FormIndex of the source program.
+     * @return The forms, which are those of the segments of the
+     * FormIndex, save a last segment that holds no form.
+     */
+    private static Form[] forms(CharSequence text, FormIndex index)
+    {
+        int count = index.size();
+        if (count > 0 && index.formStart(text, count - 1) == index.end(count - 1))
+            count--;
+
+        Form[] forms = new Form[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            int start = index.formStart(text, i);
+            int line = index.line(i);
+
+            for (int j = index.start(i); j < start; j++)
+                if (text.charAt(j) == '\n') line++;
+
+            forms[i] = new Form(start, index.end(i), line);
+        }
+
+        return forms;
+    }
+
+    /*
+     * Runs the forms in the range [first, last) and prints their
+     * results. A form with a ParseError is reported, and the forms
+     * after it are lexed and parsed anew. As each segment of the
+     * FormIndex holds a single form, the forms that are parsed are
+     * those of the range, one after another.
+     *
+     * @param bytes The source program.
+     * @param text The source program, as text.
+     * @param index The FormIndex of the source program.
+     * @param forms The forms of the source program.
+     * @param first The index of the first form to run.
+     * @param last One past the index of the last form to run.
+     */
+    private void run(byte[] bytes, CharSequence text, FormIndex index,
+        Form[] forms, int first, int last)
+    {
+        while (first < last)
+        {
+            long start = System.nanoTime();
+            Lexer lexer = index.lexer(text, first, last);
+            Parser parser = new Parser(lexer, intern);
+            Forms expressions = engine.forms(interpreter);
+
+            try
+            {
+                while (expressions.parse(parser))
+                {
+                    long evaluateStart = System.nanoTime();
+                    Form form = forms[first++];
+
+                    try
+                    {
+                        expressions.evaluate(null, value -> form.result = 
+                            new Result(DoubleFormatter.toString(value), null, 0, 0));
+                        console.format("%s:%d: %s\n", filename, form.line,
+                            form.result.value);
+                    }
+                    catch (RuntimeError err)
+                    {
+                        form.result = fail(err, bytes, form);
+                    }
+
+                    expressions.clear();
+                    MagneticMoose.stats.evaluated(System.nanoTime() - evaluateStart);
+                }
+
+                return;
+            }
+            catch (ParseError err)
+            {
+                Form form = forms[first++];
+                form.result = fail(err, bytes, form);
+            }
+            finally
+            {
+                MagneticMoose.stats.lexed(lexer);
+                MagneticMoose.stats.parsed(parser, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /*
+     * Reports the error of a form.
+     *
+     * @param err The error.
+     * @param bytes The source program.
+     * @param form The form.
+     * @return The result of the form.
+     */
+    private Result fail(InterpreterError err, byte[] bytes, Form form)
+    {
+        MagneticMoose.stats.failed(err);
+        Token token = err.getToken();
+        int lineOffset = token.line - form.line;
+        int columnOffset = lineOffset == 0
+            ? token.column - ByteSequence.columns(bytes, lineStart(bytes, form.start), 
+                form.start)
+            : token.column;
+
+        form.result = new Result(null, err, lineOffset, columnOffset);
+        displayErrorMessage(bytes, form);
+        return form.result;
+    }
+
+    private void displayErrorMessage(byte[] bytes, Form form)
+    {
+        Result result = form.result;
+        int columnNumber = column(bytes, form);
+
+        // The line of the error, read from the source program as
+        // it is now, as the text around the form may have changed.
+        int start = lineStart(bytes, form.start);
+        for (int i = 0; i < result.lineOffset; i++)
+            while (start < bytes.length && bytes[start++] != '\n');
+
+        int end = start;
+        while (end < bytes.length && bytes[end] != '\n') end++;
+
+        errors.format("%s:%d:%d: %s: %s\n", filename, form.line + result.lineOffset,
+            columnNumber, result.error.getErrorName(), result.error.getMessage());
+        console.format("\t%s\n", new String(bytes, start, end - start,
+            ByteSequence.CHARSET));
+        String columnPointer = " ".repeat(Math.max(0, columnNumber - 1)) + "^";
+        console.format("\t%s\n", columnPointer);
+    }
+
+    /*
+     * Returns the column of the error of a form.
+     */
+    private static int column(byte[] bytes, Form form)
+    {
+        Result result = form.result;
+        if (result.lineOffset > 0) return result.columnOffset;
+
+        return ByteSequence.columns(bytes, lineStart(bytes, form.start), form.start) 
+            + result.columnOffset;
+    }
+
+    /*
+     * Returns the index of the first character of the line
+     * that contains the character at an index.
+     */
+    private static int lineStart(byte[] bytes, int index)
+    {
+        while (index > 0 && bytes[index - 1] != '\n') index--;
+        return index;
+    }
+
+    /*
+     * Writes a line that summarizes a run: how many forms were run,
+     * and how many forms have errors, and where the first one is.
+     *
+     * @param ran The amount of forms that were run.
+     */
+    private void summarize(int ran)
+    {
+        int failed = 0;
+        Form firstFailed = null;
+
+        for (Form form : forms)
+        {
+            if (form.result.error != null)
+            {
+                if (firstFailed == null) firstFailed = form;
+                failed++;
+            }
+        }
+
+        console.flush();
+
+        if (failed == 0)
+            errors.format("Ran %d of %d forms, none with errors\n", ran, forms.length);
+        else
+        {
+            errors.format("Ran %d of %d forms, %d with errors, the first at %s:%d:%d\n",
+                ran, forms.length, failed, filename,
+                firstFailed.line + firstFailed.result.lineOffset,
+                column(source, firstFailed));
+        }
+    }
+
+    /*
+     * Indicates whether a form of the file has the same text
+     * as a form of the previous contents of the file.
+     */
+    private boolean same(byte[] bytes, Form form, Form previous)
+    {
+        return Arrays.equals(bytes, form.start, form.end,
+            source, previous.start, previous.end);
+    }
+
+    /*
+     * Returns the text of a form.
+     */
+    private static String text(byte[] bytes, Form form)
+    {
+        return new String(bytes, form.start, form.end - form.start,
+            StandardCharsets.ISO_8859_1);
+    }
+}